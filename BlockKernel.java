@@ -0,0 +1,138 @@
+/**
+ * 一个查询点对一段连续候选点[from, to)的批量距离判断
+ * <p>
+ * 候选点的坐标与权重存放在基本类型数组中（FlatKDTree的叶子桶、BruteForceIndex的全部点）。
+ * 距离核为WeightedKernel或EuclideanKernel且运行时加载了jdk.incubator.vector模块时，
+ * 使用VectorBlockKernel一次比较一个向量寄存器宽度（4~8个）的候选点；
+ * 否则（包括HaversineKernel）逐点调用DistanceKernel.withinPrepared，结果相同。
+ * 二维版本接收查询开始时预计算的factor = kernel.prepareQuery(qx, qy)和threshold = kernel.prepareThreshold(eps)；
+ * WeightedKernel和EuclideanKernel的threshold即eps，向量版本直接使用。
+ * <p>
+ * 向量版本需要以 --add-modules jdk.incubator.vector 编译和运行；运行时未加载该模块时不会加载VectorBlockKernel。
+ * 可以用 -Ddbscan.scalar=true 强制使用逐点版本，便于对比。
+ * <p>
+ * 三维及以上的坐标以coord[d][pos]的形式传入，距离由DistanceKernel.withinSquared判断，三维时展开计算。
+ */
+final class BlockKernel {
+
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("dbscan.scalar");
+
+    private BlockKernel() {
+    }
+
+
+    /**
+     * 统计[from, to)中与查询点距离不超过eps的点数（不含self），计数达到limit后可以提前停止
+     *
+     * @param kernel    距离核
+     * @param x         候选点X坐标
+     * @param y         候选点Y坐标
+     * @param w         候选点权重
+     * @param from      起始位置（包含）
+     * @param to        结束位置（不包含）
+     * @param qx        查询点X坐标
+     * @param qy        查询点Y坐标
+     * @param qw        查询点权重
+     * @param factor    kernel.prepareQuery(qx, qy)
+     * @param threshold kernel.prepareThreshold(eps)
+     * @param self      查询点自身的位置，不在区间内时传-1
+     * @param limit     计数上限
+     * @return 点数，可能超过limit
+     */
+    static int count(DistanceKernel kernel, double[] x, double[] y, double[] w, int from, int to,
+                     double qx, double qy, double qw, double factor, double threshold, int self, int limit) {
+        if (VECTORIZED && kernel instanceof WeightedKernel)
+            return VectorBlockKernel.count(x, y, w, from, to, qx, qy, qw, threshold, self, limit);
+        if (VECTORIZED && kernel instanceof EuclideanKernel)
+            return VectorBlockKernel.count(x, y, null, from, to, qx, qy, 0, threshold, self, limit);
+        int count = 0;
+        for (int pos = from; pos < to && count < limit; pos++)
+            if (pos != self && kernel.withinPrepared(qx, qy, qw, factor, x[pos], y[pos], w[pos], threshold))
+                count++;
+        return count;
+    }
+
+
+    /**
+     * 将[from, to)中与查询点距离不超过eps的点（不含self）追加到result中
+     *
+     * @param index  位置 -> 原始下标，为null时直接追加位置
+     * @param result 结果
+     */
+    static void collect(DistanceKernel kernel, double[] x, double[] y, double[] w, int from, int to,
+                        double qx, double qy, double qw, double factor, double threshold, int self, int[] index, IntList result) {
+        if (VECTORIZED && kernel instanceof WeightedKernel) {
+            VectorBlockKernel.collect(x, y, w, from, to, qx, qy, qw, threshold, self, index, result);
+            return;
+        }
+        if (VECTORIZED && kernel instanceof EuclideanKernel) {
+            VectorBlockKernel.collect(x, y, null, from, to, qx, qy, 0, threshold, self, index, result);
+            return;
+        }
+        for (int pos = from; pos < to; pos++)
+            if (pos != self && kernel.withinPrepared(qx, qy, qw, factor, x[pos], y[pos], w[pos], threshold))
+                result.add(index == null ? pos : index[pos]);
+    }
+
+
+    /**
+     * 多维版本的count
+     *
+     * @param coord 候选点坐标，coord[d][pos]为第pos个候选点的第d维坐标
+     * @param q     查询点坐标，长度与coord相同
+     */
+    static int count(DistanceKernel kernel, double[][] coord, double[] w, int from, int to,
+                     double[] q, double qw, double eps, int self, int limit) {
+        if (VECTORIZED && kernel instanceof WeightedKernel)
+            return VectorBlockKernel.count(coord, w, from, to, q, qw, eps, self, limit);
+        if (VECTORIZED && kernel instanceof EuclideanKernel)
+            return VectorBlockKernel.count(coord, null, from, to, q, 0, eps, self, limit);
+        int count = 0;
+        for (int pos = from; pos < to && count < limit; pos++)
+            if (pos != self && kernel.withinSquared(distance2(coord, pos, q), qw, w[pos], eps))
+                count++;
+        return count;
+    }
+
+
+    /**
+     * 多维版本的collect
+     *
+     * @param coord 候选点坐标，coord[d][pos]为第pos个候选点的第d维坐标
+     * @param q     查询点坐标，长度与coord相同
+     */
+    static void collect(DistanceKernel kernel, double[][] coord, double[] w, int from, int to,
+                        double[] q, double qw, double eps, int self, int[] index, IntList result) {
+        if (VECTORIZED && kernel instanceof WeightedKernel) {
+            VectorBlockKernel.collect(coord, w, from, to, q, qw, eps, self, index, result);
+            return;
+        }
+        if (VECTORIZED && kernel instanceof EuclideanKernel) {
+            VectorBlockKernel.collect(coord, null, from, to, q, 0, eps, self, index, result);
+            return;
+        }
+        for (int pos = from; pos < to; pos++)
+            if (pos != self && kernel.withinSquared(distance2(coord, pos, q), qw, w[pos], eps))
+                result.add(index == null ? pos : index[pos]);
+    }
+
+
+    /**
+     * @return 第pos个候选点与查询点各维坐标差的平方和，按维度顺序累加
+     */
+    static double distance2(double[][] coord, int pos, double[] q) {
+        if (q.length == 3) {
+            double dx = q[0] - coord[0][pos];
+            double dy = q[1] - coord[1][pos];
+            double dz = q[2] - coord[2][pos];
+            return dx * dx + dy * dy + dz * dz;
+        }
+        double d2 = 0;
+        for (int d = 0; d < q.length; d++) {
+            double dd = q[d] - coord[d][pos];
+            d2 += dd * dd;
+        }
+        return d2;
+    }
+}
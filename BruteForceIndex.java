@@ -0,0 +1,105 @@
+/**
+ * 暴力查找索引
+ * <p>
+ * 不建立任何空间结构，每次查询由BlockKernel将查询点与全部点比较（可用时使用向量指令）。
+ * 单次查询为O(n)，但没有树的分支和回溯，点数较少或radius相对数据范围较大时可能比树更快；
+ * 也用作检验其他索引结果的基准。支持d >= 2维坐标（需距离核支持）。
+ */
+public class BruteForceIndex implements SpatialIndex {
+
+    // coord[d]为第d维坐标，x、y为coord[0]、coord[1]
+    private final double[][] coord;
+    private final double[] x;
+    private final double[] y;
+    private final double[] weight;
+    private final DistanceKernel kernel;
+
+    private BruteForceIndex(double[][] coord, double[] weight, DistanceKernel kernel) {
+        this.coord = coord;
+        this.x = coord[0];
+        this.y = coord[1];
+        this.weight = weight;
+        this.kernel = kernel;
+    }
+
+
+    /**
+     * 使用带权距离构建索引
+     *
+     * @param store 点集合，查询结果中的下标即为store中的下标
+     * @return 暴力查找索引
+     */
+    public static BruteForceIndex buildIndex(PointStore store) {
+        return buildIndex(store, DistanceKernel.WEIGHTED);
+    }
+
+
+    /**
+     * 构建索引，坐标被复制到连续数组中，之后对store的修改不影响索引
+     *
+     * @param store  点集合，查询结果中的下标即为store中的下标
+     * @param kernel 距离核
+     * @return 暴力查找索引
+     */
+    public static BruteForceIndex buildIndex(PointStore store, DistanceKernel kernel) {
+        int n = store.size();
+        int dimensions = store.getDimensions();
+        if (dimensions > kernel.maxDimensions())
+            throw new IllegalArgumentException(kernel.getClass().getSimpleName() + " does not support " + dimensions + " dimensions");
+        double[][] coord = new double[dimensions][n];
+        double[] weight = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dimensions; d++)
+                coord[d][i] = store.getCoord(i, d);
+            weight[i] = store.getWeight(i);
+        }
+        return new BruteForceIndex(coord, weight, kernel);
+    }
+
+
+    @Override
+    public int size() {
+        return x.length;
+    }
+
+
+    @Override
+    public void searchRange(int i, double minDis, IntList result, SearchStats stats) {
+        if (stats != null) {
+            stats.countQuery();
+            stats.countDistances(x.length);
+        }
+        if (coord.length == 2)
+            BlockKernel.collect(kernel, x, y, weight, 0, x.length, x[i], y[i], weight[i],
+                    kernel.prepareQuery(x[i], y[i]), kernel.prepareThreshold(minDis), i, null, result);
+        else
+            BlockKernel.collect(kernel, coord, weight, 0, x.length, point(i), weight[i], minDis, i, null, result);
+    }
+
+
+    @Override
+    public int countRange(int i, double minDis, int limit, SearchStats stats) {
+        if (limit <= 0)
+            return 0;
+        if (stats != null) {
+            stats.countQuery();
+            stats.countDistances(x.length);
+        }
+        int count = coord.length == 2
+                ? BlockKernel.count(kernel, x, y, weight, 0, x.length, x[i], y[i], weight[i],
+                        kernel.prepareQuery(x[i], y[i]), kernel.prepareThreshold(minDis), i, limit)
+                : BlockKernel.count(kernel, coord, weight, 0, x.length, point(i), weight[i], minDis, i, limit);
+        return Math.min(count, limit);
+    }
+
+
+    /**
+     * @return 点的各维坐标，存放在当前线程复用的缓冲区中（见QueryBuffers），下一次调用前有效
+     */
+    private double[] point(int i) {
+        double[] q = QueryBuffers.get().point(coord.length);
+        for (int d = 0; d < coord.length; d++)
+            q[d] = coord[d][i];
+        return q;
+    }
+}
@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 将聚簇变化事件逐行写出，代替每次重新输出所有点（Data.writeTreeNodeData）
+ * <p>
+ * 每行一个事件：
+ * M from into          聚簇from并入into
+ * R id cluster         点被删除
+ * A id x,y,weight cluster  新增的点
+ * L id old new         点所属聚簇变化
+ * 由上一次的完整结果依次应用这些事件即可得到当前结果。
+ */
+public class ClusterEventWriter implements ClusterListener {
+    private final IncrementalDBSCAN engine;
+    private final Writer out;
+
+    /**
+     * @param engine 产生事件的聚类，用于取得新增点的坐标
+     * @param out    输出，由调用方负责关闭
+     */
+    public ClusterEventWriter(IncrementalDBSCAN engine, Writer out) {
+        this.engine = engine;
+        this.out = out;
+    }
+
+    @Override
+    public void clustersMerged(int from, int into) {
+        write("M " + from + " " + into);
+    }
+
+    @Override
+    public void pointRemoved(int id, int cluster) {
+        write("R " + id + " " + cluster);
+    }
+
+    @Override
+    public void pointAdded(int id, int cluster) {
+        write("A " + id + " " + engine.getX(id) + "," + engine.getY(id) + "," + engine.getWeight(id) + " " + cluster);
+    }
+
+    @Override
+    public void pointLabeled(int id, int oldCluster, int newCluster) {
+        write("L " + id + " " + oldCluster + " " + newCluster);
+    }
+
+    private void write(String line) {
+        try {
+            out.write(line);
+            out.write("\r\n");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * 聚簇变化事件（见IncrementalDBSCAN.endBatch）
+ * <p>
+ * 一批更新结束时按以下顺序通知：聚簇合并、点删除、点添加、点所属聚簇变化。
+ * 按顺序应用这些事件，即可由上一批结束时的聚簇结果得到当前的聚簇结果，无需重新输出所有点。
+ * 聚簇编号NOISE（0）表示噪声。所有方法默认不做任何事。
+ */
+public interface ClusterListener {
+
+    /**
+     * 聚簇from并入聚簇into，原属于from的点现在都属于into
+     */
+    default void clustersMerged(int from, int into) {
+    }
+
+
+    /**
+     * 点被删除（或过期）
+     *
+     * @param cluster 点被删除前所属的聚簇（应用本批合并事件之后的编号）
+     */
+    default void pointRemoved(int id, int cluster) {
+    }
+
+
+    /**
+     * 新增的点
+     *
+     * @param cluster 点当前所属的聚簇
+     */
+    default void pointAdded(int id, int cluster) {
+    }
+
+
+    /**
+     * 点所属的聚簇发生了变化
+     * 只通知被本批更新直接修改过的点，其余点随所在聚簇一起变化的情况由clustersMerged表示
+     *
+     * @param oldCluster 点原来所属的聚簇（应用本批合并事件之后的编号）
+     * @param newCluster 点当前所属的聚簇
+     */
+    default void pointLabeled(int id, int oldCluster, int newCluster) {
+    }
+}
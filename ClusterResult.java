@@ -0,0 +1,92 @@
+import java.util.BitSet;
+
+/**
+ * 一次聚类的结果，与点集合和索引分离
+ * <p>
+ * 点由其在索引中的下标标识；clusterID为1..clusterCount，0为噪声。
+ * 结果在构造后不再改变，可以在线程间共享；需要写回PointStore时使用copyTo。
+ */
+public final class ClusterResult {
+    private final double radius;
+    private final int minPoints;
+    private final int[] labels;
+    private final BitSet core;
+    // sizes[c]为第c个聚簇的点数（含边界点），sizes[0]为噪声点数
+    private final int[] sizes;
+
+    ClusterResult(double radius, int minPoints, int[] labels, BitSet core, int clusterCount) {
+        this.radius = radius;
+        this.minPoints = minPoints;
+        this.labels = labels;
+        this.core = core;
+        this.sizes = new int[clusterCount + 1];
+        for (int label : labels)
+            sizes[label]++;
+    }
+
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getMinPoints() {
+        return minPoints;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    public int getClusterID(int i) {
+        return labels[i];
+    }
+
+    public boolean isCore(int i) {
+        return core.get(i);
+    }
+
+    public int getClusterCount() {
+        return sizes.length - 1;
+    }
+
+    /**
+     * @param clusterID 1..getClusterCount()
+     * @return 聚簇中的点数，包括边界点
+     */
+    public int getClusterSize(int clusterID) {
+        if (clusterID < 1 || clusterID >= sizes.length)
+            throw new IllegalArgumentException("no such cluster: " + clusterID);
+        return sizes[clusterID];
+    }
+
+    public int getNoiseCount() {
+        return sizes[0];
+    }
+
+    public int getCoreCount() {
+        return core.cardinality();
+    }
+
+
+    /**
+     * 将结果写入PointStore，写入后与DBSCAN.processStoreUnionFind的结果相同
+     *
+     * @param store 与索引下标一致的点集合
+     */
+    public void copyTo(PointStore store) {
+        if (store.size() != labels.length)
+            throw new IllegalArgumentException("store has " + store.size() + " points, result has " + labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            store.setClusterID(i, labels[i]);
+            store.setCore(i, core.get(i));
+            store.setVisited(i, core.get(i));
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "radius:" + radius + " minPoints:" + minPoints + " clusters:" + getClusterCount()
+                + " cores:" + getCoreCount() + " noise:" + getNoiseCount();
+    }
+}
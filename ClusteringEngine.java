@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 可重入的聚类引擎：一份数据、一个索引，多次或同时以不同参数聚类
+ * <p>
+ * 构造时给定已构建好的近邻索引，之后只对索引做只读查询（FlatKDTree、GridIndex、BruteForceIndex、NeighborGraph的查询
+ * 都不修改索引），也不修改PointStore；每次聚类的标签、核心点标记和聚簇大小都在各自的ClusterResult中。
+ * 因此同一个引擎可以被多个线程同时使用，不需要重新读取数据或重建索引。
+ * 索引对查询半径的限制不变：GridIndex的radius不能超过网格边长，NeighborGraph只能以构建时的eps查询。
+ * 距离由构建索引时的DistanceKernel决定，引擎本身不持有距离。
+ */
+public class ClusteringEngine {
+
+    private final SpatialIndex index;
+
+    /**
+     * @param index 近邻索引
+     */
+    public ClusteringEngine(SpatialIndex index) {
+        this.index = index;
+    }
+
+
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+
+    /**
+     * 以一组参数聚类
+     *
+     * @param radius    距离阈值
+     * @param minPoints 核心点的近邻数下限
+     * @return 聚类结果
+     */
+    public ClusterResult run(double radius, int minPoints) {
+        return new DBSCAN(radius, minPoints).cluster(index);
+    }
+
+
+    /**
+     * 以一组参数聚类，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null；同时进行的聚类不能共用
+     */
+    public ClusterResult run(double radius, int minPoints, SearchStats stats) {
+        return new DBSCAN(radius, minPoints).cluster(index, stats);
+    }
+
+
+    /**
+     * 同时以多组参数聚类，每组参数由一个线程完成
+     *
+     * @param radii       每组参数的radius
+     * @param minPoints   每组参数的minPoints，长度与radii相同
+     * @param parallelism 线程数
+     * @return 与参数顺序一致的聚类结果
+     */
+    public List<ClusterResult> runAll(double[] radii, int[] minPoints, int parallelism) {
+        return runAll(radii, minPoints, parallelism, null);
+    }
+
+
+    /**
+     * 同时以多组参数聚类，同时统计所有聚类的近邻查询
+     *
+     * @param stats 查询计数器，可为null；各线程分别计数，结束后汇总到stats
+     */
+    public List<ClusterResult> runAll(double[] radii, int[] minPoints, int parallelism, SearchStats stats) {
+        if (radii.length != minPoints.length)
+            throw new IllegalArgumentException("radii and minPoints have different lengths");
+        ClusterResult[] results = new ClusterResult[radii.length];
+        SearchStats.PerThread threadStats = new SearchStats.PerThread(stats);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, radii.length).parallel()
+                    .forEach(k -> results[k] = run(radii[k], minPoints[k], threadStats.get()))).join();
+        } finally {
+            pool.shutdown();
+        }
+        threadStats.merge();
+        List<ClusterResult> list = new ArrayList<>(results.length);
+        for (ClusterResult result : results)
+            list.add(result);
+        return list;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 无锁并查集，可被多个线程同时find和union
+ * <p>
+ * 合并时总是把下标较大的根挂到下标较小的根下，并用CAS写入，失败说明根已被其他线程改变，重新查找后重试；
+ * 查找时使用路径折半（CAS失败无需处理，只是少压缩一步）。
+ * 由于没有秩，树高度不如DisjointSet有保证，但路径折半使均摊代价仍然很低。
+ */
+public class ConcurrentDisjointSet {
+    private final AtomicIntegerArray parent;
+
+    ConcurrentDisjointSet(int size) {
+        this.parent = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++)
+            parent.set(i, i);
+    }
+
+
+    /**
+     * 查找根节点
+     *
+     * @param i 元素
+     * @return i所在集合当前的根节点
+     */
+    public int find(int i) {
+        int p = parent.get(i);
+        while (p != i) {
+            int gp = parent.get(p);
+            if (gp != p)
+                parent.compareAndSet(i, p, gp);
+            i = p;
+            p = parent.get(i);
+        }
+        return i;
+    }
+
+
+    /**
+     * 合并两个元素所在的集合
+     *
+     * @return 本次调用完成了合并时返回true
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            int ra = find(a), rb = find(b);
+            if (ra == rb)
+                return false;
+            int low = Math.min(ra, rb), high = Math.max(ra, rb);
+            if (parent.compareAndSet(high, high, low))
+                return true;
+        }
+    }
+
+
+    public int size() {
+        return parent.length();
+    }
+}
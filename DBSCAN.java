@@ -1,6 +1,10 @@
-import org.apache.log4j.Logger;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * 算法原理
@@ -14,12 +18,19 @@ import java.util.ArrayList;
  * https://github.com/lincolnmi/algorithms/blob/master/src/Cluster/DBScan/DBScan.java
  */
 class DBSCAN {
-    private double radius;
-    private int minPoints;
+    private final double radius;
+    private final int minPoints;
+    // 暴力查找及TreeNode范围查询所用的距离；FlatKDTree的距离在构建时指定，GridIndex只支持带权欧氏距离
+    private final DistanceKernel kernel;
 
     DBSCAN(double radius, int minPoints) {
+        this(radius, minPoints, DistanceKernel.WEIGHTED);
+    }
+
+    DBSCAN(double radius, int minPoints, DistanceKernel kernel) {
         this.radius = radius;
         this.minPoints = minPoints;
+        this.kernel = kernel;
     }
 
 
@@ -30,10 +41,20 @@ class DBSCAN {
      * @return 核心Point集合
      */
     public ArrayList<Point> findPointCores(ArrayList<Point> allPoints) {
+        return findPointCores(allPoints, null);
+    }
+
+
+    /**
+     * 找到所有核心点  Point，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public ArrayList<Point> findPointCores(ArrayList<Point> allPoints, SearchStats stats) {
         ArrayList<Point> corePoints = new ArrayList<>();
         for (Point p : allPoints) {
             // TODO: 2018/9/27 需要根据KD-Tree改进查找算法
-            ArrayList<Point> neighbors = getNeighbors(p, allPoints);
+            ArrayList<Point> neighbors = getNeighbors(p, allPoints, stats);
             if (neighbors.size() >= minPoints) {
                 p.setCore(true);
                 p.setNeighbors(neighbors);
@@ -46,16 +67,21 @@ class DBSCAN {
 
     /**
      * 找到所有核心点 TreeNode
+     * 先用countRange判断近邻数是否达到minPoints（达到即停止遍历），只对核心点做完整的范围查询得到近邻集合
      *
      * @param allNodes 所有TreeNode集合
+     * @param stats    查询计数器，可为null
      * @return 核心TreeNode集合
      */
-    public ArrayList<TreeNode> findTreeNodeCores(int minPoints, double minDis, TreeNode root, ArrayList<TreeNode> allNodes, Logger logger) {
+    public ArrayList<TreeNode> findTreeNodeCores(int minPoints, double minDis, TreeNode root, ArrayList<TreeNode> allNodes, SearchStats stats) {
         ArrayList<TreeNode> corePoints = new ArrayList<>();
+        // setNeighbors会复制近邻，查询结果可以复用同一个集合
+        ArrayList<TreeNode> neighbors = new ArrayList<>();
         for (TreeNode node : allNodes) {
-            ArrayList<TreeNode> neighbors = TreeNode.searchKNN(root, node, minPoints, 1, minDis, logger);
-            if (neighbors.size() >= minPoints) {
+            if (TreeNode.countRange(root, node, minDis, minPoints, kernel, stats) >= minPoints) {
                 node.getData().setCore(true);
+                neighbors.clear();
+                TreeNode.searchRange(root, node, minDis, kernel, neighbors, stats);
                 node.setNeighbors(neighbors);
                 corePoints.add(node);
             }
@@ -64,6 +90,184 @@ class DBSCAN {
     }
 
 
+    /**
+     * 使用数组形式的KD-Tree找到所有核心点  Point
+     *
+     * @param allPoints 所有点集合
+     * @param tree      由allPoints构建的FlatKDTree
+     * @return 核心Point集合
+     */
+    public ArrayList<Point> findFlatTreeCores(ArrayList<Point> allPoints, FlatKDTree tree) {
+        ArrayList<Point> corePoints = new ArrayList<>();
+        for (int i = 0; i < allPoints.size(); i++) {
+            if (tree.countRange(i, radius, minPoints) >= minPoints) {
+                Point p = allPoints.get(i);
+                IntList found = tree.searchRange(i, radius);
+                ArrayList<Point> neighbors = new ArrayList<>(found.size());
+                for (int j = 0; j < found.size(); j++)
+                    neighbors.add(allPoints.get(found.get(j)));
+                p.setCore(true);
+                p.setNeighbors(neighbors);
+                corePoints.add(p);
+            }
+        }
+        return corePoints;
+    }
+
+
+    /**
+     * 找到所有核心点 PointStore形式
+     * 只在store中标记核心点，不保存近邻集合，扩张聚簇时再重新查询
+     *
+     * @param store 所有点
+     * @param index 由store构建的近邻索引
+     * @return 核心点下标
+     */
+    public IntList findStoreCores(PointStore store, SpatialIndex index) {
+        return findStoreCores(store, index, null);
+    }
+
+
+    /**
+     * 找到所有核心点 PointStore形式，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public IntList findStoreCores(PointStore store, SpatialIndex index, SearchStats stats) {
+        IntList cores = new IntList();
+        for (int i = 0; i < store.size(); i++) {
+            if (index.countRange(i, radius, minPoints, stats) >= minPoints) {
+                store.setCore(i, true);
+                cores.add(i);
+            }
+        }
+        return cores;
+    }
+
+
+    /**
+     * 使用网格索引找到所有核心点 PointStore形式
+     * 所在网格足够密集的点无需任何距离计算即可确定为核心点
+     *
+     * @param store 所有点
+     * @param grid  由store构建、网格边长不小于radius的GridIndex
+     * @return 核心点下标
+     */
+    public IntList findGridCores(PointStore store, GridIndex grid) {
+        return findGridCores(store, grid, null);
+    }
+
+
+    /**
+     * 使用网格索引找到所有核心点 PointStore形式，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public IntList findGridCores(PointStore store, GridIndex grid, SearchStats stats) {
+        IntList cores = new IntList();
+        for (int i = 0; i < store.size(); i++) {
+            if (grid.isDenseCell(i, radius, minPoints) || grid.countRange(i, radius, minPoints, stats) >= minPoints) {
+                store.setCore(i, true);
+                cores.add(i);
+            }
+        }
+        return cores;
+    }
+
+
+    /**
+     * 多线程找到所有核心点  Point
+     * 每个点的近邻查询只读取坐标和clusterID，只写入该点自身，因此可以并行执行
+     *
+     * @param allPoints   所有点集合
+     * @param parallelism 线程数
+     * @return 核心Point集合，顺序与allPoints一致
+     */
+    public ArrayList<Point> findPointCoresParallel(ArrayList<Point> allPoints, int parallelism) {
+        return findPointCoresParallel(allPoints, parallelism, null);
+    }
+
+
+    /**
+     * 多线程找到所有核心点  Point，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null；各线程分别计数，结束后汇总到stats
+     */
+    public ArrayList<Point> findPointCoresParallel(ArrayList<Point> allPoints, int parallelism, SearchStats stats) {
+        boolean[] isCore = new boolean[allPoints.size()];
+        SearchStats.PerThread threadStats = new SearchStats.PerThread(stats);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, allPoints.size()).parallel().forEach(i -> {
+                Point p = allPoints.get(i);
+                ArrayList<Point> neighbors = getNeighbors(p, allPoints, threadStats.get());
+                if (neighbors.size() >= minPoints) {
+                    p.setCore(true);
+                    p.setNeighbors(neighbors);
+                    isCore[i] = true;
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        threadStats.merge();
+
+        ArrayList<Point> corePoints = new ArrayList<>();
+        for (int i = 0; i < isCore.length; i++)
+            if (isCore[i])
+                corePoints.add(allPoints.get(i));
+        return corePoints;
+    }
+
+
+    /**
+     * 多线程找到所有核心点 TreeNode
+     * countRange和searchRange不写入TreeNode的任何字段（不同于searchKNN会写入distance），
+     * 查询状态只存在于各线程自己的调用栈和结果集合中，KD-Tree可被所有线程共享
+     *
+     * @param root        KD-Tree根节点
+     * @param allNodes    所有TreeNode集合
+     * @param parallelism 线程数
+     * @return 核心TreeNode集合，顺序与allNodes一致
+     */
+    public ArrayList<TreeNode> findTreeNodeCoresParallel(int minPoints, double minDis, TreeNode root, ArrayList<TreeNode> allNodes, int parallelism) {
+        return findTreeNodeCoresParallel(minPoints, minDis, root, allNodes, parallelism, null);
+    }
+
+
+    /**
+     * 多线程找到所有核心点 TreeNode，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null；各线程分别计数，结束后汇总到stats
+     */
+    public ArrayList<TreeNode> findTreeNodeCoresParallel(int minPoints, double minDis, TreeNode root, ArrayList<TreeNode> allNodes,
+                                                         int parallelism, SearchStats stats) {
+        boolean[] isCore = new boolean[allNodes.size()];
+        SearchStats.PerThread threadStats = new SearchStats.PerThread(stats);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, allNodes.size()).parallel().forEach(i -> {
+                TreeNode node = allNodes.get(i);
+                SearchStats local = threadStats.get();
+                if (TreeNode.countRange(root, node, minDis, minPoints, kernel, local) >= minPoints) {
+                    node.getData().setCore(true);
+                    node.setNeighbors(TreeNode.searchRange(root, node, minDis, kernel, local));
+                    isCore[i] = true;
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        threadStats.merge();
+
+        ArrayList<TreeNode> corePoints = new ArrayList<>();
+        for (int i = 0; i < isCore.length; i++)
+            if (isCore[i])
+                corePoints.add(allNodes.get(i));
+        return corePoints;
+    }
+
+
     /**
      * 开始DBSCAN算法 Point形式
      *
@@ -133,6 +337,236 @@ class DBSCAN {
     }
 
 
+    /**
+     * 开始DBSCAN算法 PointStore形式
+     * 从每个未访问的核心点开始广度优先扩张，核心点的近邻由索引即时查询
+     *
+     * @param cores 核心点下标
+     * @param store 所有点
+     * @param index 由store构建的近邻索引
+     */
+    public void processStore(IntList cores, PointStore store, SpatialIndex index) {
+        processStore(cores, store, index, null);
+    }
+
+
+    /**
+     * 开始DBSCAN算法 PointStore形式，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public void processStore(IntList cores, PointStore store, SpatialIndex index, SearchStats stats) {
+        int clusterID = 0;
+        IntList queue = new IntList();
+        IntList neighbors = new IntList();
+        for (int c = 0; c < cores.size(); c++) {
+            int core = cores.get(c);
+            if (store.isVisited(core))
+                continue;
+            clusterID++;
+            store.setVisited(core, true);
+            store.setClusterID(core, clusterID);
+
+            queue.clear();
+            queue.add(core);
+            for (int head = 0; head < queue.size(); head++) {
+                neighbors.clear();
+                index.searchRange(queue.get(head), radius, neighbors, stats);
+                for (int j = 0; j < neighbors.size(); j++) {
+                    int p = neighbors.get(j);
+                    // p不属于任何簇时
+                    if (store.getClusterID(p) <= 0)
+                        store.setClusterID(p, clusterID);
+                    // 核心点继续扩张
+                    if (store.isCore(p) && !store.isVisited(p)) {
+                        store.setVisited(p, true);
+                        queue.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 开始DBSCAN算法 PointStore形式，使用并查集形成聚簇
+     * 互为近邻的核心点合并到同一集合，非核心点归入第一个发现它的核心点所在的聚簇
+     *
+     * @param cores 核心点下标
+     * @param store 所有点，核心点须已标记
+     * @param index 由store构建的近邻索引
+     * @return 聚簇个数
+     */
+    public int processStoreUnionFind(IntList cores, PointStore store, SpatialIndex index) {
+        return processStoreUnionFind(cores, store, index, null);
+    }
+
+
+    /**
+     * 开始DBSCAN算法 PointStore形式，使用并查集形成聚簇，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public int processStoreUnionFind(IntList cores, PointStore store, SpatialIndex index, SearchStats stats) {
+        BitSet core = new BitSet(store.size());
+        for (int c = 0; c < cores.size(); c++)
+            core.set(cores.get(c));
+        ClusterResult result = link(index, core, stats);
+        result.copyTo(store);
+        return result.getClusterCount();
+    }
+
+
+    /**
+     * 多线程同时找到核心点并形成聚簇 PointStore形式
+     * 每个点确定为核心点后立即与已标记为核心点的近邻合并：两个互为近邻的核心点都是先写入自身标记再读取对方标记，
+     * 后完成的一方一定能看到先完成的一方，因此每对核心点至少被合并一次，无需在核心点检测之后再串行扩张。
+     *
+     * @param store       所有点
+     * @param index       由store构建的近邻索引
+     * @param parallelism 线程数
+     * @return 聚簇个数
+     */
+    public int clusterStoreParallel(PointStore store, SpatialIndex index, int parallelism) {
+        return clusterStoreParallel(store, index, parallelism, null);
+    }
+
+
+    /**
+     * 多线程同时找到核心点并形成聚簇，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null；各线程分别计数，结束后汇总到stats
+     */
+    public int clusterStoreParallel(PointStore store, SpatialIndex index, int parallelism, SearchStats stats) {
+        int n = store.size();
+        AtomicIntegerArray isCore = new AtomicIntegerArray(n);
+        AtomicIntegerArray borderOf = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++)
+            borderOf.set(i, -1);
+        ConcurrentDisjointSet set = new ConcurrentDisjointSet(n);
+        ThreadLocal<IntList> buffers = ThreadLocal.withInitial(IntList::new);
+        SearchStats.PerThread threadStats = new SearchStats.PerThread(stats);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> {
+                SearchStats local = threadStats.get();
+                if (index.countRange(i, radius, minPoints, local) < minPoints)
+                    return;
+                isCore.set(i, 1);
+                IntList neighbors = buffers.get();
+                neighbors.clear();
+                index.searchRange(i, radius, neighbors, local);
+                for (int j = 0; j < neighbors.size(); j++) {
+                    int p = neighbors.get(j);
+                    if (isCore.get(p) == 1)
+                        set.union(i, p);
+                    else
+                        borderOf.compareAndSet(p, -1, i);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        threadStats.merge();
+
+        BitSet core = new BitSet(n);
+        int[] border = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (isCore.get(i) == 1)
+                core.set(i);
+            border[i] = borderOf.get(i);
+        }
+        ClusterResult result = label(core, set::find, border);
+        result.copyTo(store);
+        return result.getClusterCount();
+    }
+
+
+    /**
+     * 聚类但不修改任何点或索引，结果单独返回；同一个索引可以同时被多个线程以不同参数聚类
+     *
+     * @param index 近邻索引
+     * @return 聚类结果，编号方式与processStoreUnionFind相同
+     */
+    public ClusterResult cluster(SpatialIndex index) {
+        return cluster(index, null);
+    }
+
+
+    /**
+     * 聚类但不修改任何点或索引，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null；多个线程同时聚类时不能共用
+     */
+    public ClusterResult cluster(SpatialIndex index, SearchStats stats) {
+        int n = index.size();
+        BitSet core = new BitSet(n);
+        for (int i = 0; i < n; i++)
+            if (index.countRange(i, radius, minPoints, stats) >= minPoints)
+                core.set(i);
+        return link(index, core, stats);
+    }
+
+
+    /**
+     * 以并查集合并互为近邻的核心点，非核心点归属于第一个找到它的核心点
+     *
+     * @param index 近邻索引
+     * @param core  核心点标记
+     * @param stats 查询计数器，可为null
+     * @return 聚类结果
+     */
+    private ClusterResult link(SpatialIndex index, BitSet core, SearchStats stats) {
+        int n = index.size();
+        DisjointSet set = new DisjointSet(n);
+        int[] borderOf = new int[n];
+        Arrays.fill(borderOf, -1);
+        IntList neighbors = new IntList();
+        for (int c = core.nextSetBit(0); c >= 0; c = core.nextSetBit(c + 1)) {
+            neighbors.clear();
+            index.searchRange(c, radius, neighbors, stats);
+            for (int j = 0; j < neighbors.size(); j++) {
+                int p = neighbors.get(j);
+                // 近邻关系是对称的，每对核心点只需合并一次
+                if (core.get(p)) {
+                    if (p < c)
+                        set.union(c, p);
+                } else if (borderOf[p] < 0) {
+                    borderOf[p] = c;
+                }
+            }
+        }
+        return label(core, set::find, borderOf);
+    }
+
+
+    /**
+     * 根据并查集结果为每个点确定clusterID，聚簇按其最小核心点下标的顺序编号
+     *
+     * @param core     核心点标记
+     * @param find     并查集的查找操作
+     * @param borderOf 非核心点所归属的核心点下标，-1表示噪声
+     * @return 聚类结果
+     */
+    private ClusterResult label(BitSet core, IntUnaryOperator find, int[] borderOf) {
+        int n = borderOf.length;
+        int[] rootLabel = new int[n];
+        int clusterID = 0;
+        for (int i = core.nextSetBit(0); i >= 0; i = core.nextSetBit(i + 1)) {
+            int root = find.applyAsInt(i);
+            if (rootLabel[root] == 0)
+                rootLabel[root] = ++clusterID;
+        }
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            int owner = core.get(i) ? i : borderOf[i];
+            labels[i] = owner < 0 ? 0 : rootLabel[find.applyAsInt(owner)];
+        }
+        return new ClusterResult(radius, minPoints, labels, core, clusterID);
+    }
+
+
     /**
      * 扩张聚簇
      *
@@ -172,7 +606,7 @@ class DBSCAN {
     private void densityConnected(Point core, int clusterID, ArrayList<Point> allPoints) {
         if (core.getClusterID() > 0) return;
         // TODO: 2018/9/27 使用KD-Tree优化
-        ArrayList<Point> neighbors = getNeighbors(core, allPoints);
+        ArrayList<Point> neighbors = getNeighbors(core, allPoints, null);
         for (Point p : neighbors) {
             if (p.getClusterID() <= 0) {
                 // curCluster.add(p);
@@ -188,14 +622,21 @@ class DBSCAN {
      * 找到未访问的近邻点
      * @param cur       当前Point
      * @param points    所有点集合
+     * @param stats     查询计数器，可为null
      * @return 近邻点集合
      */
-    private ArrayList<Point> getNeighbors(Point cur, ArrayList<Point> points) {
+    private ArrayList<Point> getNeighbors(Point cur, ArrayList<Point> points, SearchStats stats) {
+        if (stats != null) {
+            stats.countQuery();
+            stats.countDistances(points.size());
+        }
         ArrayList<Point> neighborPoints = new ArrayList<>();
+        double factor = kernel.prepareQuery(cur.getX(), cur.getY()), threshold = kernel.prepareThreshold(radius);
         for (Point p : points) {
             if (p.getClusterID() > 0) continue;
-            double distance = cur.getDistance(p);
-            if (distance <= radius && distance != 0)
+            // 先用within比较（无需开方），只对范围内的点计算距离以排除距离为0的点
+            if (kernel.withinPrepared(cur.getX(), cur.getY(), cur.getWeight(), factor, p.getX(), p.getY(), p.getWeight(), threshold)
+                    && kernel.distance(cur.getX(), cur.getY(), cur.getWeight(), p.getX(), p.getY(), p.getWeight()) != 0)
                 neighborPoints.add(p);
         }
         return neighborPoints;
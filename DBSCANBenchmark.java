@@ -0,0 +1,397 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * 性能基准测试
+ * <p>
+ * 对KD-Tree构建、近邻查询、核心点查找、聚簇扩张及完整流程计时，覆盖不同数据规模和radius/minPoints组合，
+ * 同时统计每次操作在当前线程上分配的内存以及GC次数和耗时，用于发现性能退化和比较不同索引。
+ * 每个用例先预热若干轮，再测量若干轮；每轮之前重新生成数据，生成时间不计入结果。
+ * <p>
+ * 用法：java DBSCANBenchmark [规模,规模,...] [radius:minPoints,radius:minPoints,...]
+ * 例如：java DBSCANBenchmark 10000,100000 5:3,10:8
+ * 加上 --add-modules jdk.incubator.vector 时BruteForceIndex和FlatKDTree叶子桶使用向量指令（见BlockKernel）。
+ */
+public class DBSCANBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int MEASURE = 5;
+    // 暴力查找为O(n^2)，searchKNN的回溯在大规模时同样接近O(n^2)，超过此规模时跳过
+    private static final int QUADRATIC_LIMIT = 20000;
+
+    // 防止JIT消除无用计算
+    private static long blackhole;
+
+    /**
+     * 一个基准用例：setup准备数据（不计时），run为被测操作
+     */
+    private abstract static class Case {
+        final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract void setup();
+
+        abstract long run();
+    }
+
+
+    public static void main(String[] args) {
+        int[] sizes = {10000, 100000, 1000000};
+        double[][] params = {{5, 3}, {10, 8}};
+        if (args.length > 0) {
+            String[] s = args[0].split(",");
+            sizes = new int[s.length];
+            for (int i = 0; i < s.length; i++)
+                sizes[i] = Integer.parseInt(s[i].trim());
+        }
+        if (args.length > 1) {
+            String[] s = args[1].split(",");
+            params = new double[s.length][];
+            for (int i = 0; i < s.length; i++) {
+                String[] p = s[i].split(":");
+                params[i] = new double[]{Double.parseDouble(p[0]), Double.parseDouble(p[1])};
+            }
+        }
+
+        System.out.println("case\tsize\tradius\tminPoints\tavg(ms)\tmin(ms)\talloc(MB/op)\tgc(count/op)\tgc(ms/op)");
+        for (int size : sizes)
+            for (double[] p : params)
+                for (Case c : cases(size, p[0], (int) p[1]))
+                    measure(c, size, p[0], (int) p[1]);
+        System.out.println("# blackhole " + blackhole);
+    }
+
+
+    /**
+     * 生成测试数据：若干高斯分布的聚簇加均匀分布的噪声，点密度与规模无关
+     *
+     * @param size 点数
+     * @return 所有点
+     */
+    static PointStore generate(int size) {
+        Random rd = new Random(size);
+        double extent = Math.sqrt(size) * 10;
+        int clusters = Math.max(1, size / 1000);
+        double[][] centers = new double[clusters][2];
+        for (double[] c : centers) {
+            c[0] = rd.nextDouble() * extent;
+            c[1] = rd.nextDouble() * extent;
+        }
+
+        PointStore store = new PointStore(size);
+        for (int i = 0; i < size; i++) {
+            double weight = rd.nextDouble() * 0.5;
+            if (i % 5 == 0) {
+                store.add(rd.nextDouble() * extent, rd.nextDouble() * extent, weight);
+            } else {
+                double[] c = centers[rd.nextInt(clusters)];
+                store.add(c[0] + rd.nextGaussian() * 20, c[1] + rd.nextGaussian() * 20, weight);
+            }
+        }
+        return store;
+    }
+
+
+    private static ArrayList<Case> cases(int size, double radius, int minPoints) {
+        PointStore source = generate(size);
+        ArrayList<Case> cases = new ArrayList<>();
+
+        cases.add(new Case("TreeNode.buildKDTree") {
+            ArrayList<TreeNode> nodes;
+
+            void setup() {
+                nodes = Data.toTreeNodes(source);
+            }
+
+            long run() {
+                return TreeNode.buildKDTree(nodes, 1) == null ? 0 : 1;
+            }
+        });
+
+        if (size <= QUADRATIC_LIMIT) {
+            cases.add(new Case("TreeNode.searchKNN") {
+                ArrayList<TreeNode> nodes;
+                TreeNode root;
+                ArrayList<TreeNode> knn = new ArrayList<>();
+
+                void setup() {
+                    nodes = Data.toTreeNodes(source);
+                    root = TreeNode.buildKDTree(new ArrayList<>(nodes), 1);
+                }
+
+                long run() {
+                    long found = 0;
+                    for (TreeNode node : nodes) {
+                        TreeNode.searchKNN(root, node, minPoints, 1, radius, knn, null);
+                        found += knn.size();
+                    }
+                    return found;
+                }
+            });
+        }
+
+        cases.add(new Case("TreeNode.buildKDTreeParallel") {
+            ArrayList<TreeNode> nodes;
+
+            void setup() {
+                nodes = Data.toTreeNodes(source);
+            }
+
+            long run() {
+                return TreeNode.buildKDTreeParallel(nodes, 1) == null ? 0 : 1;
+            }
+        });
+
+        cases.add(new Case("TreeNode.searchRange") {
+            ArrayList<TreeNode> nodes;
+            TreeNode root;
+
+            void setup() {
+                nodes = Data.toTreeNodes(source);
+                root = TreeNode.buildKDTree(new ArrayList<>(nodes), 1);
+            }
+
+            long run() {
+                long found = 0;
+                for (TreeNode node : nodes)
+                    found += TreeNode.searchRange(root, node, radius).size();
+                return found;
+            }
+        });
+
+        if (size <= QUADRATIC_LIMIT) {
+            cases.add(new Case("DBSCAN.findPointCores(brute force getNeighbors)") {
+                ArrayList<Point> points;
+
+                void setup() {
+                    points = source.toPoints();
+                }
+
+                long run() {
+                    return new DBSCAN(radius, minPoints).findPointCores(points).size();
+                }
+            });
+        }
+
+        cases.add(new Case("DBSCAN.findTreeNodeCores") {
+            ArrayList<TreeNode> nodes;
+            TreeNode root;
+
+            void setup() {
+                nodes = Data.toTreeNodes(source);
+                root = TreeNode.buildKDTree(new ArrayList<>(nodes), 1);
+            }
+
+            long run() {
+                return new DBSCAN(radius, minPoints).findTreeNodeCores(minPoints, radius, root, nodes, null).size();
+            }
+        });
+
+        cases.add(new Case("DBSCAN.processTreeNode") {
+            ArrayList<TreeNode> cores;
+            DBSCAN dbscan;
+
+            void setup() {
+                ArrayList<TreeNode> nodes = Data.toTreeNodes(source);
+                TreeNode root = TreeNode.buildKDTree(new ArrayList<>(nodes), 1);
+                dbscan = new DBSCAN(radius, minPoints);
+                cores = dbscan.findTreeNodeCores(minPoints, radius, root, nodes, null);
+            }
+
+            long run() {
+                dbscan.processTreeNode(cores);
+                return cores.size();
+            }
+        });
+
+        cases.add(new Case("end-to-end TreeNode") {
+            ArrayList<TreeNode> nodes;
+
+            void setup() {
+                nodes = Data.toTreeNodes(source);
+            }
+
+            long run() {
+                DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                TreeNode root = TreeNode.buildKDTree(new ArrayList<>(nodes), 1);
+                ArrayList<TreeNode> cores = dbscan.findTreeNodeCores(minPoints, radius, root, nodes, null);
+                dbscan.processTreeNode(cores);
+                return cores.size();
+            }
+        });
+
+        cases.add(new Case("FlatKDTree.buildKDTree") {
+            void setup() {
+            }
+
+            long run() {
+                return FlatKDTree.buildKDTree(source).size();
+            }
+        });
+
+        cases.add(new Case("GridIndex.buildGrid") {
+            void setup() {
+            }
+
+            long run() {
+                return GridIndex.buildGrid(source, radius).getCellCount();
+            }
+        });
+
+        cases.add(new Case("end-to-end FlatKDTree") {
+            PointStore store;
+
+            void setup() {
+                store = PointStore.fromPoints(source.toPoints());
+            }
+
+            long run() {
+                DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                FlatKDTree tree = FlatKDTree.buildKDTree(store);
+                IntList cores = dbscan.findStoreCores(store, tree);
+                dbscan.processStore(cores, store, tree);
+                return cores.size();
+            }
+        });
+
+        cases.add(new Case("Data.spatialOrder") {
+            void setup() {
+            }
+
+            long run() {
+                return Data.spatialOrder(source, Runtime.getRuntime().availableProcessors()).length;
+            }
+        });
+
+        // 包括排序和重新排列的时间
+        cases.add(new Case("end-to-end FlatKDTree (Hilbert order)") {
+            PointStore store;
+
+            void setup() {
+                store = PointStore.fromPoints(source.toPoints());
+            }
+
+            long run() {
+                PointStore ordered = store.reorder(Data.spatialOrder(store, Runtime.getRuntime().availableProcessors()));
+                DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                FlatKDTree tree = FlatKDTree.buildKDTree(ordered);
+                IntList cores = dbscan.findStoreCores(ordered, tree);
+                dbscan.processStore(cores, ordered, tree);
+                return cores.size();
+            }
+        });
+
+        if (size <= QUADRATIC_LIMIT) {
+            cases.add(new Case("end-to-end BruteForceIndex") {
+                PointStore store;
+
+                void setup() {
+                    store = PointStore.fromPoints(source.toPoints());
+                }
+
+                long run() {
+                    DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                    BruteForceIndex index = BruteForceIndex.buildIndex(store);
+                    IntList cores = dbscan.findStoreCores(store, index);
+                    dbscan.processStore(cores, store, index);
+                    return cores.size();
+                }
+            });
+        }
+
+        cases.add(new Case("OPTICS.run + extractDBSCAN") {
+            PointStore store;
+
+            void setup() {
+                store = PointStore.fromPoints(source.toPoints());
+            }
+
+            long run() {
+                OPTICS optics = new OPTICS(radius, minPoints);
+                optics.run(store, FlatKDTree.buildKDTree(store));
+                return optics.extractDBSCAN(radius, new int[store.size()]);
+            }
+        });
+
+        cases.add(new Case("NeighborGraph recluster") {
+            PointStore store;
+            NeighborGraph graph;
+
+            void setup() {
+                store = PointStore.fromPoints(source.toPoints());
+                graph = NeighborGraph.buildGraph(FlatKDTree.buildKDTree(store), radius);
+            }
+
+            long run() {
+                DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                IntList cores = dbscan.findStoreCores(store, graph);
+                return dbscan.processStoreUnionFind(cores, store, graph);
+            }
+        });
+
+        cases.add(new Case("end-to-end GridIndex") {
+            PointStore store;
+
+            void setup() {
+                store = PointStore.fromPoints(source.toPoints());
+            }
+
+            long run() {
+                DBSCAN dbscan = new DBSCAN(radius, minPoints);
+                GridIndex grid = GridIndex.buildGrid(store, radius);
+                IntList cores = dbscan.findGridCores(store, grid);
+                dbscan.processStore(cores, store, grid);
+                return cores.size();
+            }
+        });
+        return cases;
+    }
+
+
+    private static void measure(Case c, int size, double radius, int minPoints) {
+        for (int i = 0; i < WARMUP; i++) {
+            c.setup();
+            blackhole += c.run();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0, min = Long.MAX_VALUE, allocated = 0, collections = 0, collectionMillis = 0;
+        for (int i = 0; i < MEASURE; i++) {
+            c.setup();
+            long gcCount0 = gcCount(), gcTime0 = gcTime();
+            long alloc0 = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            blackhole += c.run();
+            long elapsed = System.nanoTime() - start;
+            allocated += threads.getCurrentThreadAllocatedBytes() - alloc0;
+            collections += gcCount() - gcCount0;
+            collectionMillis += gcTime() - gcTime0;
+            total += elapsed;
+            min = Math.min(min, elapsed);
+        }
+
+        System.out.printf("%s\t%d\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.2f\t%.2f%n", c.name, size, radius, minPoints,
+                total / 1e6 / MEASURE, min / 1e6, allocated / 1048576.0 / MEASURE, (double) collections / MEASURE, (double) collectionMillis / MEASURE);
+    }
+
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+        return count;
+    }
+
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(gc.getCollectionTime(), 0);
+        return time;
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.*;
+
+/**
+ * 分区聚类的工作进程（见PartitionedDBSCAN）
+ * <p>
+ * 每次运行处理一个分块文件（分块自身的点加宽度为radius的边缘区），分两轮：
+ * cores轮为分块自身的点判断核心点；cluster轮使用协调进程汇总后的核心点标记在分块内形成局部聚簇。
+ * 输入输出都是文件，且都按全局下标升序，工作进程之间不通信，可以在共享同一目录的任意节点上运行。
+ * <p>
+ * 用法：
+ * java DBSCANWorker cores 分块编号 分块文件 核心点文件 radius minPoints
+ * java DBSCANWorker cluster 分块编号 分块文件 核心点标记文件 标签文件 核心点标签文件 边缘核心点文件 radius minPoints
+ */
+public class DBSCANWorker {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static void main(String[] args) {
+        try {
+            run(args);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * 执行一轮计算，协调进程在本进程内运行工作进程时也调用此方法
+     *
+     * @param args 同main
+     */
+    static void run(String[] args) throws IOException {
+        if (args.length == 6 && args[0].equals("cores")) {
+            findCores(Integer.parseInt(args[1]), new File(args[2]), new File(args[3]),
+                    Double.parseDouble(args[4]), Integer.parseInt(args[5]));
+        } else if (args.length == 9 && args[0].equals("cluster")) {
+            cluster(Integer.parseInt(args[1]), new File(args[2]), new File(args[3]), new File(args[4]), new File(args[5]),
+                    new File(args[6]), Double.parseDouble(args[7]), Integer.parseInt(args[8]));
+        } else {
+            throw new IllegalArgumentException("usage: cores <id> <tile> <cores> <radius> <minPoints>"
+                    + " | cluster <id> <tile> <flags> <labels> <coreLabels> <haloCores> <radius> <minPoints>");
+        }
+    }
+
+
+    /**
+     * 为分块自身的点判断核心点：这些点的radius近邻都在分块及其边缘区内，结果是准确的。
+     * 边缘区的点近邻不完整，不输出
+     *
+     * @param id   分块编号
+     * @param tile 分块文件
+     * @param out  输出：分块自身核心点的全局下标，每个为long
+     */
+    private static void findCores(int id, File tile, File out, double radius, int minPoints) throws IOException {
+        int n = PartitionedDBSCAN.tileSize(tile);
+        long[] global = new long[n];
+        int[] owner = new int[n];
+        PointStore store = PartitionedDBSCAN.readTile(tile, global, owner);
+        FlatKDTree tree = FlatKDTree.buildKDTree(store);
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), BUFFER_SIZE))) {
+            for (int i = 0; i < n; i++)
+                if (owner[i] == id && tree.countRange(i, radius, minPoints) >= minPoints)
+                    os.writeLong(global[i]);
+        }
+    }
+
+
+    /**
+     * 使用全局准确的核心点标记在分块内形成局部聚簇
+     *
+     * @param id         分块编号
+     * @param tile       分块文件
+     * @param flags      核心点标记，与分块中的点一一对应，每个为boolean
+     * @param labels     输出：局部聚簇个数（int），随后为分块自身每个点的局部聚簇ID（int，0为噪声）及核心点标记（boolean）
+     * @param coreLabels 输出：分块自身的每个核心点的全局下标（long）及局部聚簇ID（int）
+     * @param haloCores  输出：边缘区每个核心点的全局下标（long）、所属分块（int）及局部聚簇ID（int）
+     */
+    private static void cluster(int id, File tile, File flags, File labels, File coreLabels, File haloCores,
+                                double radius, int minPoints) throws IOException {
+        int n = PartitionedDBSCAN.tileSize(tile);
+        long[] global = new long[n];
+        int[] owner = new int[n];
+        PointStore store = PartitionedDBSCAN.readTile(tile, global, owner);
+        IntList cores = new IntList();
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(flags), BUFFER_SIZE))) {
+            for (int i = 0; i < n; i++) {
+                if (is.readBoolean()) {
+                    store.setCore(i, true);
+                    cores.add(i);
+                }
+            }
+        }
+
+        FlatKDTree tree = FlatKDTree.buildKDTree(store);
+        int clusters = new DBSCAN(radius, minPoints).processStoreUnionFind(cores, store, tree);
+        try (DataOutputStream ls = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(labels), BUFFER_SIZE));
+             DataOutputStream cs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(coreLabels), BUFFER_SIZE));
+             DataOutputStream hs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(haloCores), BUFFER_SIZE))) {
+            ls.writeInt(clusters);
+            for (int i = 0; i < n; i++) {
+                if (owner[i] == id) {
+                    ls.writeInt(store.getClusterID(i));
+                    ls.writeBoolean(store.isCore(i));
+                    if (store.isCore(i)) {
+                        cs.writeLong(global[i]);
+                        cs.writeInt(store.getClusterID(i));
+                    }
+                } else if (store.isCore(i)) {
+                    hs.writeLong(global[i]);
+                    hs.writeInt(owner[i]);
+                    hs.writeInt(store.getClusterID(i));
+                }
+            }
+        }
+    }
+}
@@ -1,9 +1,23 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class Data {
 
+    // 二进制格式：文件头 + x列 + y列 + weight列，均为小端double
+    // 文件头：魔数(int) 版本(int) 点数(long) minX maxX minY maxY(double)，共48字节
+    private static final int BINARY_MAGIC = 0x44425350;
+    private static final int BINARY_VERSION = 1;
+    private static final int BINARY_HEADER_SIZE = 48;
+
     public static ArrayList<Point> readDataToPoint(String sourcePath) {
         ArrayList<Point> list = new ArrayList<>();
         File inFile = new File(sourcePath);
@@ -45,6 +59,190 @@ public class Data {
     }
 
 
+    /**
+     * 一次读取文件得到PointStore，每行只解析一次，不使用split
+     *
+     * @param sourcePath x,y,weight格式的文本文件
+     * @return 所有点
+     */
+    public static PointStore readDataToStore(String sourcePath) {
+        return readDataToStore(sourcePath, 1);
+    }
+
+
+    /**
+     * 将文件按字节划分为若干区间并行解析，再按顺序拼接，点的顺序与文件中的行顺序一致
+     *
+     * @param sourcePath  x,y,weight格式的文本文件
+     * @param parallelism 线程数
+     * @return 所有点
+     */
+    public static PointStore readDataToStore(String sourcePath, int parallelism) {
+        return readDataToStore(sourcePath, parallelism, 2);
+    }
+
+
+    /**
+     * 读取d维数据，每行为d个坐标加权重，例如三维时为x,y,z,weight
+     *
+     * @param sourcePath  文本文件
+     * @param parallelism 线程数
+     * @param dimensions  坐标维数
+     * @return 所有点
+     */
+    public static PointStore readDataToStore(String sourcePath, int parallelism, int dimensions) {
+        PointStore store = new PointStore(1024, dimensions);
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // 小文件不值得并行
+            int chunks = size < (1 << 24) ? 1 : Math.max(parallelism, 1) * 4;
+            if (chunks == 1) {
+                PointParser.parse(channel, 0, size, store);
+                return store;
+            }
+
+            PointStore[] parts = new PointStore[chunks];
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+                    parts[c] = new PointStore((int) (size / chunks / 16), dimensions);
+                    try {
+                        PointParser.parse(channel, size * c / chunks, size * (c + 1) / chunks, parts[c]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).join();
+            } finally {
+                pool.shutdown();
+            }
+            for (PointStore part : parts)
+                store.addAll(part);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (UncheckedIOException e) {
+            e.getCause().printStackTrace();
+        }
+        return store;
+    }
+
+
+    /**
+     * 计算保持空间局部性的点顺序：二维按Hilbert曲线，多维按Morton码，以并行基数排序得到（见SpatialOrder）
+     * 用store.reorder(order)重新排列后再建索引和聚类，空间上相邻的点在内存中也相邻；
+     * 结果可以用writeStoreData(store, order, destPath)按原始顺序写出
+     *
+     * @param store       所有点
+     * @param parallelism 线程数
+     * @return order[k]为排序后第k个点在store中的下标
+     */
+    public static int[] spatialOrder(PointStore store, int parallelism) {
+        return SpatialOrder.order(store, parallelism);
+    }
+
+
+    /**
+     * 由PointStore得到TreeNode集合，每个TreeNode包含新的Point对象
+     *
+     * @param store 所有点
+     * @return TreeNode集合，顺序与下标一致
+     */
+    public static ArrayList<TreeNode> toTreeNodes(PointStore store) {
+        ArrayList<TreeNode> list = new ArrayList<>(store.size());
+        for (Point p : store.toPoints())
+            list.add(new TreeNode(p));
+        return list;
+    }
+
+
+    /**
+     * 将x,y,weight文本文件转换为二进制格式
+     *
+     * @param sourcePath 文本文件
+     * @param destPath   二进制文件
+     */
+    public static void convertTextToBinary(String sourcePath, String destPath) {
+        writeBinary(readDataToStore(sourcePath, Runtime.getRuntime().availableProcessors()), destPath);
+    }
+
+
+    /**
+     * 将PointStore的坐标与权重写为二进制格式
+     *
+     * @param store    所有点
+     * @param destPath 二进制文件
+     */
+    public static void writeBinary(PointStore store, String destPath) {
+        if (store.getDimensions() != 2)
+            throw new IllegalArgumentException("binary format only supports 2 dimensions, got " + store.getDimensions());
+        int n = store.size();
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, store.getX(i));
+            maxX = Math.max(maxX, store.getX(i));
+            minY = Math.min(minY, store.getY(i));
+            maxY = Math.max(maxY, store.getY(i));
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(destPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putLong(n);
+            buffer.putDouble(minX).putDouble(maxX).putDouble(minY).putDouble(maxY);
+            for (int column = 0; column < 3; column++) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer.remaining() < Double.BYTES)
+                        flush(channel, buffer);
+                    buffer.putDouble(column == 0 ? store.getX(i) : column == 1 ? store.getY(i) : store.getWeight(i));
+                }
+            }
+            flush(channel, buffer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    /**
+     * 以内存映射方式打开二进制文件，坐标不复制到堆中
+     *
+     * @param sourcePath 由writeBinary或convertTextToBinary生成的二进制文件
+     * @return 所有点
+     */
+    public static PointStore mapBinary(String sourcePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != BINARY_MAGIC || header.getInt(4) != BINARY_VERSION)
+                throw new IOException("not a point binary file: " + sourcePath);
+            long count = header.getLong(8);
+            long columnBytes = count * Double.BYTES;
+            // 单次映射不能超过2GB
+            if (columnBytes > Integer.MAX_VALUE)
+                throw new IOException("too many points to map: " + count);
+            if (channel.size() < BINARY_HEADER_SIZE + 3 * columnBytes)
+                throw new IOException("truncated point binary file: " + sourcePath);
+
+            DoubleBuffer[] columns = new DoubleBuffer[3];
+            for (int column = 0; column < 3; column++)
+                columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, BINARY_HEADER_SIZE + column * columnBytes, columnBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            return new MappedPointStore(columns[0], columns[1], columns[2],
+                    header.getDouble(16), header.getDouble(24), header.getDouble(32), header.getDouble(40));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new PointStore(1);
+    }
+
+
     public static void writePointData(ArrayList<Point> cores, String destPath) {
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(destPath));
@@ -75,6 +273,40 @@ public class Data {
     }
 
 
+    public static void writeStoreData(PointStore store, String destPath) {
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(destPath));
+            for (int i = 0; i < store.size(); i++)
+                bw.write(store.toString(i) + "\r\n");
+            bw.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * 将重新排列过的PointStore按原始顺序写出，输出与未排列时的writeStoreData相同
+     *
+     * @param store 由reorder(order)得到的PointStore
+     * @param order spatialOrder得到的顺序
+     */
+    public static void writeStoreData(PointStore store, int[] order, String destPath) {
+        // rank[i]为原始第i个点在store中的下标
+        int[] rank = new int[order.length];
+        for (int k = 0; k < order.length; k++)
+            rank[order[k]] = k;
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(destPath));
+            for (int i = 0; i < rank.length; i++)
+                bw.write(store.toString(rank[i]) + "\r\n");
+            bw.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
     //    不知道有没有用
     public static ArrayList<Point> generateSinData(int size) {
         ArrayList<Point> points = new ArrayList<Point>(size);
@@ -0,0 +1,60 @@
+/**
+ * 并查集（按秩合并 + 路径压缩）
+ * 元素为[0, size)的整数，父节点保存在int数组中
+ */
+public class DisjointSet {
+    private final int[] parent;
+    private final byte[] rank;
+
+    DisjointSet(int size) {
+        this.parent = new int[size];
+        this.rank = new byte[size];
+        for (int i = 0; i < size; i++)
+            parent[i] = i;
+    }
+
+
+    /**
+     * 查找根节点，并将路径上的节点直接指向根节点
+     *
+     * @param i 元素
+     * @return i所在集合的根节点
+     */
+    public int find(int i) {
+        int root = i;
+        while (parent[root] != root)
+            root = parent[root];
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+
+    /**
+     * 合并两个元素所在的集合
+     *
+     * @return 合并前两元素不在同一集合时返回true
+     */
+    public boolean union(int a, int b) {
+        int ra = find(a), rb = find(b);
+        if (ra == rb)
+            return false;
+        if (rank[ra] < rank[rb]) {
+            parent[ra] = rb;
+        } else if (rank[ra] > rank[rb]) {
+            parent[rb] = ra;
+        } else {
+            parent[rb] = ra;
+            rank[ra]++;
+        }
+        return true;
+    }
+
+
+    public int size() {
+        return parent.length;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * 距离核：定义两点间的距离以及KD-Tree剪枝所需的距离界
+ * <p>
+ * 近邻判断使用within而不是distance <= eps，实现类可以在不开方、不调用三角函数反函数的情况下
+ * 比较平方距离（或其他单调变换后的距离）与预先算好的阈值。
+ * 实现类均为final且无状态，同一次运行中只使用一种实现时，热点循环中的调用是单态的，可以被JIT内联。
+ * <p>
+ * 一次查询中阈值和查询点都不变：索引在查询开始时调用一次prepareThreshold(eps)和prepareQuery(qx, qy)，
+ * 之后对每个候选点和子树使用带Prepared后缀的方法，不再重复与eps或查询点有关的计算（例如球面距离的hav(eps/R)
+ * 和查询点纬度的余弦）。默认的预计算为恒等，Prepared方法直接调用对应的方法；
+ * 覆盖了prepareThreshold或prepareQuery的实现类必须同时覆盖所有Prepared方法。
+ * <p>
+ * 维度编号：0为X轴（经度），1为Y轴（纬度）。
+ * 以欧氏距离为基础的距离核还可用于三维及以上的坐标：调用方自行累加各维坐标差的平方，再由withinSquared判断或由distance(d2, w1, w2)得到距离。
+ */
+public interface DistanceKernel {
+
+    // 与Point.getDistance相同：欧氏距离 + 两点权重
+    DistanceKernel WEIGHTED = new WeightedKernel();
+    // 欧氏距离，忽略权重
+    DistanceKernel EUCLIDEAN = new EuclideanKernel();
+    // 经纬度（度）间的球面距离（米），忽略权重
+    DistanceKernel HAVERSINE = new HaversineKernel();
+
+
+    /**
+     * @return 两点间距离
+     */
+    double distance(double x1, double y1, double w1, double x2, double y2, double w2);
+
+
+    /**
+     * @return 两点间距离是否不超过eps
+     */
+    boolean within(double x1, double y1, double w1, double x2, double y2, double w2, double eps);
+
+
+    /**
+     * 判断子树是否可以剪枝：查询点到子树在dim维上的坐标差为gap时，子树中是否一定没有距离不超过eps的点
+     *
+     * @param dim       维度
+     * @param gap       坐标差（可正可负）
+     * @param qx        查询点X坐标
+     * @param qy        查询点Y坐标
+     * @param qw        查询点权重
+     * @param minWeight 子树中的最小权重
+     * @param eps       距离阈值
+     * @return 可以剪枝时返回true
+     */
+    boolean axisOutside(int dim, double gap, double qx, double qy, double qw, double minWeight, double eps);
+
+
+    /**
+     * 判断外接矩形内是否一定没有与查询点距离不超过eps的点
+     *
+     * @param minWeight 矩形内的最小权重
+     */
+    boolean boxOutside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double minWeight, double eps);
+
+
+    /**
+     * 判断外接矩形内的点是否一定都与查询点距离不超过eps
+     *
+     * @param maxWeight 矩形内的最大权重
+     */
+    boolean boxInside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double maxWeight, double eps);
+
+
+    /**
+     * @return 距离阈值在Prepared方法中使用的形式，默认即eps
+     */
+    default double prepareThreshold(double eps) {
+        return eps;
+    }
+
+
+    /**
+     * @return 查询点在Prepared方法中使用的预计算量，默认不需要，为0
+     */
+    default double prepareQuery(double qx, double qy) {
+        return 0;
+    }
+
+
+    /**
+     * 与within(qx, qy, qw, x, y, w, eps)相同
+     *
+     * @param factor    prepareQuery(qx, qy)
+     * @param threshold prepareThreshold(eps)
+     */
+    default boolean withinPrepared(double qx, double qy, double qw, double factor, double x, double y, double w, double threshold) {
+        return within(qx, qy, qw, x, y, w, threshold);
+    }
+
+
+    /**
+     * 与axisOutside相同，factor和threshold见withinPrepared
+     */
+    default boolean axisOutsidePrepared(int dim, double gap, double qx, double qy, double qw, double factor, double minWeight, double threshold) {
+        return axisOutside(dim, gap, qx, qy, qw, minWeight, threshold);
+    }
+
+
+    /**
+     * 与boxOutside相同，factor和threshold见withinPrepared
+     */
+    default boolean boxOutsidePrepared(double qx, double qy, double qw, double factor, double minX, double maxX, double minY, double maxY,
+                                       double minWeight, double threshold) {
+        return boxOutside(qx, qy, qw, minX, maxX, minY, maxY, minWeight, threshold);
+    }
+
+
+    /**
+     * 与boxInside相同，factor和threshold见withinPrepared
+     */
+    default boolean boxInsidePrepared(double qx, double qy, double qw, double factor, double minX, double maxX, double minY, double maxY,
+                                      double maxWeight, double threshold) {
+        return boxInside(qx, qy, qw, minX, maxX, minY, maxY, maxWeight, threshold);
+    }
+
+
+    /**
+     * @return 支持的最大坐标维数，默认只支持二维
+     */
+    default int maxDimensions() {
+        return 2;
+    }
+
+
+    /**
+     * 已知两点各维坐标差的平方和d2时，判断距离是否不超过eps，用于三维及以上的坐标
+     * 结果对d2和两点权重单调不减，因此也可以用外接矩形的最小、最大距离平方判断剪枝。
+     * maxDimensions为2的实现类不以坐标差定义距离，应抛出UnsupportedOperationException
+     *
+     * @param d2 各维坐标差的平方和
+     * @param w1 第一个点的权重
+     * @param w2 第二个点的权重
+     */
+    boolean withinSquared(double d2, double w1, double w2, double eps);
+
+
+    /**
+     * 已知两点各维坐标差的平方和d2时的距离，用于三维及以上的坐标，与withinSquared一致：
+     * withinSquared(d2, w1, w2, eps)与distance(d2, w1, w2) <= eps等价
+     *
+     * @param d2 各维坐标差的平方和
+     * @param w1 第一个点的权重
+     * @param w2 第二个点的权重
+     */
+    double distance(double d2, double w1, double w2);
+}
@@ -0,0 +1,53 @@
+/**
+ * 欧氏距离，忽略权重；比较平方距离与eps^2
+ */
+public final class EuclideanKernel implements DistanceKernel {
+
+    @Override
+    public double distance(double x1, double y1, double w1, double x2, double y2, double w2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Override
+    public boolean within(double x1, double y1, double w1, double x2, double y2, double w2, double eps) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy <= eps * eps;
+    }
+
+    @Override
+    public boolean axisOutside(int dim, double gap, double qx, double qy, double qw, double minWeight, double eps) {
+        return Math.abs(gap) > eps;
+    }
+
+    @Override
+    public boolean boxOutside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double minWeight, double eps) {
+        double dx = Math.max(Math.max(minX - qx, qx - maxX), 0);
+        double dy = Math.max(Math.max(minY - qy, qy - maxY), 0);
+        return dx * dx + dy * dy > eps * eps;
+    }
+
+    @Override
+    public boolean boxInside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double maxWeight, double eps) {
+        double dx = Math.max(qx - minX, maxX - qx);
+        double dy = Math.max(qy - minY, maxY - qy);
+        return dx * dx + dy * dy <= eps * eps;
+    }
+
+    @Override
+    public int maxDimensions() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean withinSquared(double d2, double w1, double w2, double eps) {
+        return d2 <= eps * eps;
+    }
+
+    @Override
+    public double distance(double d2, double w1, double w2) {
+        return Math.sqrt(d2);
+    }
+}
@@ -0,0 +1,564 @@
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 基于数组的隐式KD-Tree
+ * <p>
+ * 不为每个节点创建TreeNode对象，坐标与权重按树的顺序存放在基本类型数组中：
+ * 区间[lo, hi)对应一棵子树，其根节点位于中间位置mid = (lo + hi) / 2，
+ * 左子树为[lo, mid)，右子树为[mid + 1, hi)，分割维度由深度决定（偶数层X轴，奇数层Y轴），
+ * 因此无需保存left、right、parent指针和dim。
+ * <p>
+ * 同一子树的数据在内存中连续，遍历时的缓存命中率远高于TreeNode形式。
+ * 树建好后不再修改，可被多个线程同时查询。
+ * <p>
+ * 每个子树根节点的位置上还保存了整棵子树的外接矩形和最小、最大权重（子树大小即hi - lo）：
+ * 查询时外接矩形与查询球不相交的子树直接跳过，整个落在查询球内的子树直接计入而无需逐点计算距离。
+ * 由于带权距离为欧氏距离加两点权重，子树中任意点与查询点的距离不小于
+ * 矩形距离 + 查询点权重 + 子树最小权重，权重较大的子树因此可以被更早剪枝。
+ * <p>
+ * 距离由构建时指定的DistanceKernel定义，默认为与Point.getDistance相同的带权距离。
+ * <p>
+ * 坐标可以是d >= 2维，第depth % d层按第depth % d维分割；二维时仍按上述方式查询，
+ * 三维及以上时外接矩形逐维保存，距离由DistanceKernel.withinSquared判断。
+ * <p>
+ * 点数不超过LEAF_SIZE的子树作为叶子桶，不再划分：桶内的点是连续的一段，
+ * 查询时由BlockKernel整段比较（可用时使用向量指令），而不是逐个节点递归。
+ */
+public class FlatKDTree implements SpatialIndex {
+
+    // 子树点数超过此值时，左右子树作为fork-join任务并行构建
+    private static final int PARALLEL_BUILD_CUTOFF = 1 << 13;
+    // 叶子桶的最大点数
+    private static final int LEAF_SIZE = 32;
+
+    private final int dimensions;
+    // 按树顺序存放的坐标及权重，coord[d]为第d维坐标，x、y为coord[0]、coord[1]
+    private final double[][] coord;
+    private final double[] x;
+    private final double[] y;
+    private final double[] weight;
+    // 树中位置 -> 原始下标
+    private final int[] index;
+    // 原始下标 -> 树中位置
+    private final int[] position;
+    // 以该位置为根的子树的外接矩形及最小、最大权重，min[d]、max[d]为第d维的范围
+    private final double[][] min, max;
+    private final double[] minX, maxX, minY, maxY;
+    private final double[] minWeight, maxWeight;
+    private final DistanceKernel kernel;
+
+    private FlatKDTree(double[][] coord, double[] weight, int[] index, DistanceKernel kernel) {
+        int n = index.length;
+        this.kernel = kernel;
+        this.dimensions = coord.length;
+        this.coord = coord;
+        this.x = coord[0];
+        this.y = coord[1];
+        this.weight = weight;
+        this.index = index;
+        this.position = new int[n];
+        this.min = new double[dimensions][n];
+        this.max = new double[dimensions][n];
+        this.minX = min[0];
+        this.maxX = max[0];
+        this.minY = min[1];
+        this.maxY = max[1];
+        this.minWeight = new double[n];
+        this.maxWeight = new double[n];
+    }
+
+
+    /**
+     * 构建KD-Tree
+     *
+     * @param points Point集合，查询结果中的下标即为此集合中的下标
+     * @return 构建好的KD-Tree
+     */
+    public static FlatKDTree buildKDTree(ArrayList<Point> points) {
+        return buildKDTree(PointStore.fromPoints(points));
+    }
+
+
+    /**
+     * 构建KD-Tree，坐标被复制到树中，之后对store的修改不影响树
+     *
+     * @param store 点集合，查询结果中的下标即为store中的下标
+     * @return 构建好的KD-Tree
+     */
+    public static FlatKDTree buildKDTree(PointStore store) {
+        return buildKDTree(store, DistanceKernel.WEIGHTED);
+    }
+
+
+    /**
+     * 使用指定距离核构建KD-Tree，之后的查询均使用该距离
+     *
+     * @param store  点集合，查询结果中的下标即为store中的下标
+     * @param kernel 距离核
+     * @return 构建好的KD-Tree
+     */
+    public static FlatKDTree buildKDTree(PointStore store, DistanceKernel kernel) {
+        int n = store.size();
+        int dimensions = store.getDimensions();
+        if (dimensions > kernel.maxDimensions())
+            throw new IllegalArgumentException(kernel.getClass().getSimpleName() + " does not support " + dimensions + " dimensions");
+        double[][] coord = new double[dimensions][n];
+        double[] weight = new double[n];
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) {
+            coord[0][i] = store.getX(i);
+            coord[1][i] = store.getY(i);
+            for (int d = 2; d < dimensions; d++)
+                coord[d][i] = store.getCoord(i, d);
+            weight[i] = store.getWeight(i);
+            index[i] = i;
+        }
+
+        FlatKDTree tree = new FlatKDTree(coord, weight, index, kernel);
+        ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> tree.build(0, n, 0)));
+        for (int pos = 0; pos < n; pos++)
+            tree.position[index[pos]] = pos;
+        return tree;
+    }
+
+
+    /**
+     * 递归构建子树：将区间[lo, hi)的中位数放到中间位置，左侧不大于中位数，右侧不小于中位数，
+     * 左右子树建好后再计算本子树的外接矩形；点数不超过LEAF_SIZE时作为叶子桶直接计算外接矩形
+     *
+     * @param lo    区间左下标（包含）
+     * @param hi    区间右下标（不包含）
+     * @param depth 子树深度
+     */
+    private void build(int lo, int hi, int depth) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if (hi - lo <= LEAF_SIZE) {
+            computeLeafBounds(lo, mid, hi);
+            return;
+        }
+        select(lo, hi - 1, mid, coord[depth % dimensions]);
+        if (hi - lo > PARALLEL_BUILD_CUTOFF) {
+            ForkJoinTask.invokeAll(ForkJoinTask.adapt(() -> build(lo, mid, depth + 1)),
+                    ForkJoinTask.adapt(() -> build(mid + 1, hi, depth + 1)));
+        } else {
+            build(lo, mid, depth + 1);
+            build(mid + 1, hi, depth + 1);
+        }
+        computeBounds(lo, mid, hi);
+    }
+
+
+    /**
+     * 由根节点及左右子树的外接矩形得到子树[lo, hi)的外接矩形和最小、最大权重
+     */
+    private void computeBounds(int lo, int mid, int hi) {
+        double lx = x[mid], hx = x[mid], ly = y[mid], hy = y[mid], lw = weight[mid], w = weight[mid];
+        for (int child = 0; child < 2; child++) {
+            int clo = child == 0 ? lo : mid + 1;
+            int chi = child == 0 ? mid : hi;
+            if (clo >= chi)
+                continue;
+            int c = (clo + chi) >>> 1;
+            lx = Math.min(lx, minX[c]);
+            hx = Math.max(hx, maxX[c]);
+            ly = Math.min(ly, minY[c]);
+            hy = Math.max(hy, maxY[c]);
+            lw = Math.min(lw, minWeight[c]);
+            w = Math.max(w, maxWeight[c]);
+        }
+        minX[mid] = lx;
+        maxX[mid] = hx;
+        minY[mid] = ly;
+        maxY[mid] = hy;
+        minWeight[mid] = lw;
+        maxWeight[mid] = w;
+        for (int d = 2; d < dimensions; d++) {
+            double l = coord[d][mid], h = coord[d][mid];
+            if (lo < mid) {
+                l = Math.min(l, min[d][(lo + mid) >>> 1]);
+                h = Math.max(h, max[d][(lo + mid) >>> 1]);
+            }
+            if (mid + 1 < hi) {
+                l = Math.min(l, min[d][(mid + 1 + hi) >>> 1]);
+                h = Math.max(h, max[d][(mid + 1 + hi) >>> 1]);
+            }
+            min[d][mid] = l;
+            max[d][mid] = h;
+        }
+    }
+
+
+    /**
+     * 逐点计算叶子桶[lo, hi)的外接矩形和最小、最大权重，保存在mid位置
+     */
+    private void computeLeafBounds(int lo, int mid, int hi) {
+        double lx = x[lo], hx = x[lo], ly = y[lo], hy = y[lo], lw = weight[lo], w = weight[lo];
+        for (int pos = lo + 1; pos < hi; pos++) {
+            lx = Math.min(lx, x[pos]);
+            hx = Math.max(hx, x[pos]);
+            ly = Math.min(ly, y[pos]);
+            hy = Math.max(hy, y[pos]);
+            lw = Math.min(lw, weight[pos]);
+            w = Math.max(w, weight[pos]);
+        }
+        minX[mid] = lx;
+        maxX[mid] = hx;
+        minY[mid] = ly;
+        maxY[mid] = hy;
+        minWeight[mid] = lw;
+        maxWeight[mid] = w;
+        for (int d = 2; d < dimensions; d++) {
+            double l = coord[d][lo], h = coord[d][lo];
+            for (int pos = lo + 1; pos < hi; pos++) {
+                l = Math.min(l, coord[d][pos]);
+                h = Math.max(h, coord[d][pos]);
+            }
+            min[d][mid] = l;
+            max[d][mid] = h;
+        }
+    }
+
+
+    /**
+     * 迭代式快速选择，使第k个位置上的元素为区间[lo, hi]中第k小的元素
+     *
+     * @param lo    区间左下标（包含）
+     * @param hi    区间右下标（包含）
+     * @param k     目标位置
+     * @param coord 比较所用维度的坐标数组
+     */
+    private void select(int lo, int hi, int k, double[] coord) {
+        while (lo < hi) {
+            double pivot = coord[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coord[i] < pivot)
+                    i++;
+                while (coord[j] > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+
+    private void swap(int i, int j) {
+        double tmp = x[i];
+        x[i] = x[j];
+        x[j] = tmp;
+        tmp = y[i];
+        y[i] = y[j];
+        y[j] = tmp;
+        tmp = weight[i];
+        weight[i] = weight[j];
+        weight[j] = tmp;
+        int t = index[i];
+        index[i] = index[j];
+        index[j] = t;
+        for (int d = 2; d < dimensions; d++) {
+            double[] c = coord[d];
+            tmp = c[i];
+            c[i] = c[j];
+            c[j] = tmp;
+        }
+    }
+
+
+    @Override
+    public int size() {
+        return index.length;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param pos 树中位置
+     * @return 原始下标
+     */
+    public int getIndex(int pos) {
+        return index[pos];
+    }
+
+    /**
+     * @param i 原始下标
+     * @return 树中位置
+     */
+    public int getPosition(int i) {
+        return position[i];
+    }
+
+
+    /**
+     * 半径范围查询，结果不含查询点本身
+     *
+     * @param i      查询点的原始下标
+     * @param minDis 距离阈值
+     * @return 范围内点的原始下标
+     */
+    public IntList searchRange(int i, double minDis) {
+        IntList result = new IntList();
+        searchRange(i, minDis, result);
+        return result;
+    }
+
+
+    /**
+     * 半径范围查询，结果追加到result中
+     *
+     * @param i      查询点的原始下标
+     * @param minDis 距离阈值
+     * @param result 范围内点的原始下标
+     * @param stats  查询计数器，可为null
+     */
+    @Override
+    public void searchRange(int i, double minDis, IntList result, SearchStats stats) {
+        int self = position[i];
+        if (stats != null)
+            stats.countQuery();
+        if (dimensions == 2)
+            search(0, index.length, x[self], y[self], weight[self], kernel.prepareQuery(x[self], y[self]),
+                    kernel.prepareThreshold(minDis), self, result, stats);
+        else
+            searchN(0, index.length, point(self), weight[self], self, minDis, result, stats);
+    }
+
+
+    /**
+     * 半径范围计数，计数达到limit时立即停止遍历
+     *
+     * @param i      查询点的原始下标
+     * @param minDis 距离阈值
+     * @param limit  计数上限，通常为minPoints
+     * @param stats  查询计数器，可为null
+     * @return 范围内点数，最大为limit
+     */
+    @Override
+    public int countRange(int i, double minDis, int limit, SearchStats stats) {
+        if (limit <= 0)
+            return 0;
+        int self = position[i];
+        if (stats != null)
+            stats.countQuery();
+        if (dimensions == 2)
+            return count(0, index.length, 0, x[self], y[self], weight[self], kernel.prepareQuery(x[self], y[self]),
+                    kernel.prepareThreshold(minDis), self, limit, 0, stats);
+        return countN(0, index.length, 0, point(self), weight[self], self, minDis, limit, 0, stats);
+    }
+
+
+    /**
+     * @return 树中位置pos处的点的各维坐标，存放在当前线程复用的缓冲区中（见QueryBuffers），下一次调用前有效
+     */
+    private double[] point(int pos) {
+        double[] q = QueryBuffers.get().point(dimensions);
+        for (int d = 0; d < dimensions; d++)
+            q[d] = coord[d][pos];
+        return q;
+    }
+
+
+    /**
+     * 子树中任意点与查询点的距离都超过阈值；factor、threshold为查询开始时由距离核预计算的值（见DistanceKernel.prepareQuery）
+     */
+    private boolean outside(int mid, double qx, double qy, double qw, double factor, double threshold) {
+        return kernel.boxOutsidePrepared(qx, qy, qw, factor, minX[mid], maxX[mid], minY[mid], maxY[mid], minWeight[mid], threshold);
+    }
+
+
+    /**
+     * 子树整体落在查询球内
+     */
+    private boolean inside(int mid, double qx, double qy, double qw, double factor, double threshold) {
+        return kernel.boxInsidePrepared(qx, qy, qw, factor, minX[mid], maxX[mid], minY[mid], maxY[mid], maxWeight[mid], threshold);
+    }
+
+
+    private void search(int lo, int hi, double qx, double qy, double qw, double factor, double threshold, int self, IntList result, SearchStats stats) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if (outside(mid, qx, qy, qw, factor, threshold)) {
+            if (stats != null)
+                stats.countPruned();
+            return;
+        }
+        if (inside(mid, qx, qy, qw, factor, threshold)) {
+            for (int pos = lo; pos < hi; pos++)
+                if (pos != self)
+                    result.add(index[pos]);
+            return;
+        }
+
+        if (stats != null)
+            stats.countVisit();
+        if (hi - lo <= LEAF_SIZE) {
+            if (stats != null)
+                stats.countDistances(hi - lo);
+            BlockKernel.collect(kernel, x, y, weight, lo, hi, qx, qy, qw, factor, threshold, self, index, result);
+            return;
+        }
+        if (mid != self) {
+            if (stats != null)
+                stats.countDistance();
+            if (kernel.withinPrepared(qx, qy, qw, factor, x[mid], y[mid], weight[mid], threshold))
+                result.add(index[mid]);
+        }
+        search(lo, mid, qx, qy, qw, factor, threshold, self, result, stats);
+        search(mid + 1, hi, qx, qy, qw, factor, threshold, self, result, stats);
+    }
+
+
+    private int count(int lo, int hi, int depth, double qx, double qy, double qw, double factor, double threshold, int self, int limit, int count, SearchStats stats) {
+        if (lo >= hi || count >= limit)
+            return count;
+        int mid = (lo + hi) >>> 1;
+        if (outside(mid, qx, qy, qw, factor, threshold)) {
+            if (stats != null)
+                stats.countPruned();
+            return count;
+        }
+        if (inside(mid, qx, qy, qw, factor, threshold)) {
+            count += hi - lo - (self >= lo && self < hi ? 1 : 0);
+            return Math.min(count, limit);
+        }
+
+        if (stats != null)
+            stats.countVisit();
+        if (hi - lo <= LEAF_SIZE) {
+            if (stats != null)
+                stats.countDistances(hi - lo);
+            return Math.min(count + BlockKernel.count(kernel, x, y, weight, lo, hi, qx, qy, qw, factor, threshold, self, limit - count), limit);
+        }
+        if (mid != self) {
+            if (stats != null)
+                stats.countDistance();
+            if (kernel.withinPrepared(qx, qy, qw, factor, x[mid], y[mid], weight[mid], threshold) && ++count >= limit)
+                return count;
+        }
+
+        // 优先进入查询点所在一侧的子树
+        double gap = (depth & 1) == 0 ? qx - x[mid] : qy - y[mid];
+        if (gap <= 0) {
+            count = count(lo, mid, depth + 1, qx, qy, qw, factor, threshold, self, limit, count, stats);
+            count = count(mid + 1, hi, depth + 1, qx, qy, qw, factor, threshold, self, limit, count, stats);
+        } else {
+            count = count(mid + 1, hi, depth + 1, qx, qy, qw, factor, threshold, self, limit, count, stats);
+            count = count(lo, mid, depth + 1, qx, qy, qw, factor, threshold, self, limit, count, stats);
+        }
+        return count;
+    }
+
+
+    /**
+     * 多维时查询点到子树外接矩形的最小距离平方
+     */
+    private double boxMinDistance2(int mid, double[] q) {
+        double d2 = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double dd = Math.max(Math.max(min[d][mid] - q[d], q[d] - max[d][mid]), 0);
+            d2 += dd * dd;
+        }
+        return d2;
+    }
+
+
+    /**
+     * 多维时查询点到子树外接矩形的最大距离平方
+     */
+    private double boxMaxDistance2(int mid, double[] q) {
+        double d2 = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double dd = Math.max(q[d] - min[d][mid], max[d][mid] - q[d]);
+            d2 += dd * dd;
+        }
+        return d2;
+    }
+
+
+    private void searchN(int lo, int hi, double[] q, double qw, int self, double minDis, IntList result, SearchStats stats) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if (!kernel.withinSquared(boxMinDistance2(mid, q), qw, minWeight[mid], minDis)) {
+            if (stats != null)
+                stats.countPruned();
+            return;
+        }
+        if (kernel.withinSquared(boxMaxDistance2(mid, q), qw, maxWeight[mid], minDis)) {
+            for (int pos = lo; pos < hi; pos++)
+                if (pos != self)
+                    result.add(index[pos]);
+            return;
+        }
+
+        if (stats != null)
+            stats.countVisit();
+        if (hi - lo <= LEAF_SIZE) {
+            if (stats != null)
+                stats.countDistances(hi - lo);
+            BlockKernel.collect(kernel, coord, weight, lo, hi, q, qw, minDis, self, index, result);
+            return;
+        }
+        if (mid != self) {
+            if (stats != null)
+                stats.countDistance();
+            if (kernel.withinSquared(BlockKernel.distance2(coord, mid, q), qw, weight[mid], minDis))
+                result.add(index[mid]);
+        }
+        searchN(lo, mid, q, qw, self, minDis, result, stats);
+        searchN(mid + 1, hi, q, qw, self, minDis, result, stats);
+    }
+
+
+    private int countN(int lo, int hi, int depth, double[] q, double qw, int self, double minDis, int limit, int count, SearchStats stats) {
+        if (lo >= hi || count >= limit)
+            return count;
+        int mid = (lo + hi) >>> 1;
+        if (!kernel.withinSquared(boxMinDistance2(mid, q), qw, minWeight[mid], minDis)) {
+            if (stats != null)
+                stats.countPruned();
+            return count;
+        }
+        if (kernel.withinSquared(boxMaxDistance2(mid, q), qw, maxWeight[mid], minDis)) {
+            count += hi - lo - (self >= lo && self < hi ? 1 : 0);
+            return Math.min(count, limit);
+        }
+
+        if (stats != null)
+            stats.countVisit();
+        if (hi - lo <= LEAF_SIZE) {
+            if (stats != null)
+                stats.countDistances(hi - lo);
+            return Math.min(count + BlockKernel.count(kernel, coord, weight, lo, hi, q, qw, minDis, self, limit - count), limit);
+        }
+        if (mid != self) {
+            if (stats != null)
+                stats.countDistance();
+            if (kernel.withinSquared(BlockKernel.distance2(coord, mid, q), qw, weight[mid], minDis) && ++count >= limit)
+                return count;
+        }
+
+        int dim = depth % dimensions;
+        if (q[dim] <= coord[dim][mid]) {
+            count = countN(lo, mid, depth + 1, q, qw, self, minDis, limit, count, stats);
+            count = countN(mid + 1, hi, depth + 1, q, qw, self, minDis, limit, count, stats);
+        } else {
+            count = countN(mid + 1, hi, depth + 1, q, qw, self, minDis, limit, count, stats);
+            count = countN(lo, mid, depth + 1, q, qw, self, minDis, limit, count, stats);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 均匀网格索引（空间哈希）
+ * <p>
+ * 以cellSize（通常取radius）为边长划分网格，查询半径不超过cellSize时，
+ * 近邻点只可能位于查询点所在网格及其周围共3x3个网格中。
+ * 只为非空网格分配空间：网格坐标经哈希表映射到网格编号，
+ * 点的坐标按网格编号顺序复制到连续数组中，同一网格的点在内存中相邻。
+ * 构建只需两次线性扫描，无需排序和递归。只支持二维坐标。
+ */
+public class GridIndex implements SpatialIndex {
+
+    private final double cellSize;
+    private final double minX, minY;
+
+    // 按网格顺序存放的坐标及权重
+    private final double[] x;
+    private final double[] y;
+    private final double[] weight;
+    // 网格顺序位置 -> 原始下标
+    private final int[] index;
+    // 原始下标 -> 网格顺序位置
+    private final int[] position;
+    // 每个位置所属的网格编号
+    private final int[] cellOf;
+
+    // 第c个网格的点位于[cellStart[c], cellStart[c + 1])
+    private final int[] cellStart;
+    private final int[] cellX, cellY;
+    // 网格内点的实际外接矩形对角线长度与最大权重，用于判断密集网格
+    private final double[] cellDiameter;
+    private final double[] cellMaxWeight;
+
+    // 网格坐标 -> 网格编号的开放寻址哈希表
+    private final long[] tableKeys;
+    private final int[] tableCells;
+    private final int tableMask;
+
+    private GridIndex(PointStore store, double cellSize) {
+        int n = store.size();
+        this.cellSize = cellSize;
+
+        double mx = Double.POSITIVE_INFINITY, my = Double.POSITIVE_INFINITY;
+        double ax = Double.NEGATIVE_INFINITY, ay = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            mx = Math.min(mx, store.getX(i));
+            my = Math.min(my, store.getY(i));
+            ax = Math.max(ax, store.getX(i));
+            ay = Math.max(ay, store.getY(i));
+        }
+        this.minX = n == 0 ? 0 : mx;
+        this.minY = n == 0 ? 0 : my;
+        if ((ax - mx) / cellSize >= Integer.MAX_VALUE - 1 || (ay - my) / cellSize >= Integer.MAX_VALUE - 1)
+            throw new IllegalArgumentException("cellSize " + cellSize + " is too small for the data extent");
+
+        int capacity = Integer.highestOneBit(Math.max(2 * n, 2) - 1) << 1;
+        this.tableKeys = new long[capacity];
+        this.tableCells = new int[capacity];
+        this.tableMask = capacity - 1;
+        Arrays.fill(tableCells, -1);
+
+        // step 第一次扫描：为每个点找到网格编号并计数
+        int[] pointCell = new int[n];
+        IntList cxs = new IntList(), cys = new IntList(), counts = new IntList();
+        for (int i = 0; i < n; i++) {
+            int cx = cellCoord(store.getX(i), minX);
+            int cy = cellCoord(store.getY(i), minY);
+            int c = lookup(cx, cy);
+            if (c < 0) {
+                c = cxs.size();
+                insert(cx, cy, c);
+                cxs.add(cx);
+                cys.add(cy);
+                counts.add(0);
+            }
+            counts.set(c, counts.get(c) + 1);
+            pointCell[i] = c;
+        }
+
+        int cells = cxs.size();
+        this.cellX = cxs.toArray();
+        this.cellY = cys.toArray();
+        this.cellStart = new int[cells + 1];
+        for (int c = 0; c < cells; c++)
+            cellStart[c + 1] = cellStart[c] + counts.get(c);
+
+        // step 第二次扫描：按网格编号放置点
+        this.x = new double[n];
+        this.y = new double[n];
+        this.weight = new double[n];
+        this.index = new int[n];
+        this.position = new int[n];
+        this.cellOf = new int[n];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < n; i++) {
+            int c = pointCell[i];
+            int pos = next[c]++;
+            x[pos] = store.getX(i);
+            y[pos] = store.getY(i);
+            weight[pos] = store.getWeight(i);
+            index[pos] = i;
+            position[i] = pos;
+            cellOf[pos] = c;
+        }
+
+        this.cellDiameter = new double[cells];
+        this.cellMaxWeight = new double[cells];
+        for (int c = 0; c < cells; c++) {
+            double lx = Double.POSITIVE_INFINITY, ly = Double.POSITIVE_INFINITY;
+            double hx = Double.NEGATIVE_INFINITY, hy = Double.NEGATIVE_INFINITY;
+            double w = Double.NEGATIVE_INFINITY;
+            for (int pos = cellStart[c]; pos < cellStart[c + 1]; pos++) {
+                lx = Math.min(lx, x[pos]);
+                ly = Math.min(ly, y[pos]);
+                hx = Math.max(hx, x[pos]);
+                hy = Math.max(hy, y[pos]);
+                w = Math.max(w, weight[pos]);
+            }
+            cellDiameter[c] = Math.sqrt((hx - lx) * (hx - lx) + (hy - ly) * (hy - ly));
+            cellMaxWeight[c] = w;
+        }
+    }
+
+
+    /**
+     * 构建网格索引
+     *
+     * @param store    点集合，查询结果中的下标即为store中的下标
+     * @param cellSize 网格边长，查询半径不能超过此值
+     * @return 构建好的网格索引
+     */
+    public static GridIndex buildGrid(PointStore store, double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        if (store.getDimensions() != 2)
+            throw new IllegalArgumentException("grid index only supports 2 dimensions, got " + store.getDimensions());
+        return new GridIndex(store, cellSize);
+    }
+
+
+    private int cellCoord(double v, double min) {
+        return (int) Math.floor((v - min) / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & tableMask;
+    }
+
+    /**
+     * @return 网格编号，网格为空时返回-1
+     */
+    private int lookup(int cx, int cy) {
+        long key = key(cx, cy);
+        for (int s = slot(key); ; s = (s + 1) & tableMask) {
+            int c = tableCells[s];
+            if (c < 0 || tableKeys[s] == key)
+                return c;
+        }
+    }
+
+    private void insert(int cx, int cy, int c) {
+        long key = key(cx, cy);
+        int s = slot(key);
+        while (tableCells[s] >= 0)
+            s = (s + 1) & tableMask;
+        tableKeys[s] = key;
+        tableCells[s] = c;
+    }
+
+
+    @Override
+    public int size() {
+        return index.length;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return 非空网格数
+     */
+    public int getCellCount() {
+        return cellX.length;
+    }
+
+
+    /**
+     * 判断点所在网格是否足够密集，可以不做距离计算直接认定为核心点：
+     * 网格内除该点外至少还有minPoints个点，且网格内任意两点的带权距离都不超过minDis
+     * （外接矩形对角线 + 2 * 最大权重 <= minDis）
+     *
+     * @param i         点的下标
+     * @param minDis    距离阈值
+     * @param minPoints 核心点的近邻数下限
+     * @return 是否为密集网格中的点
+     */
+    public boolean isDenseCell(int i, double minDis, int minPoints) {
+        int c = cellOf[position[i]];
+        return cellStart[c + 1] - cellStart[c] > minPoints && cellDiameter[c] + 2 * cellMaxWeight[c] <= minDis;
+    }
+
+
+    @Override
+    public void searchRange(int i, double minDis, IntList result, SearchStats stats) {
+        checkRadius(minDis);
+        if (stats != null)
+            stats.countQuery();
+        int self = position[i];
+        int c0 = cellOf[self];
+        double qx = x[self], qy = y[self], qw = weight[self];
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int c = lookup(cellX[c0] + dx, cellY[c0] + dy);
+                if (c < 0)
+                    continue;
+                if (stats != null)
+                    stats.countVisit();
+                for (int pos = cellStart[c]; pos < cellStart[c + 1]; pos++) {
+                    if (pos == self)
+                        continue;
+                    if (stats != null)
+                        stats.countDistance();
+                    if (within(pos, qx, qy, qw, minDis))
+                        result.add(index[pos]);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 直接在3x3网格中回调，不经过缓冲区
+     */
+    @Override
+    public void forEachInRange(int i, double minDis, IntConsumer action, SearchStats stats) {
+        checkRadius(minDis);
+        if (stats != null)
+            stats.countQuery();
+        int self = position[i];
+        int c0 = cellOf[self];
+        double qx = x[self], qy = y[self], qw = weight[self];
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int c = lookup(cellX[c0] + dx, cellY[c0] + dy);
+                if (c < 0)
+                    continue;
+                if (stats != null)
+                    stats.countVisit();
+                for (int pos = cellStart[c]; pos < cellStart[c + 1]; pos++) {
+                    if (pos == self)
+                        continue;
+                    if (stats != null)
+                        stats.countDistance();
+                    if (within(pos, qx, qy, qw, minDis))
+                        action.accept(index[pos]);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public int countRange(int i, double minDis, int limit, SearchStats stats) {
+        checkRadius(minDis);
+        if (limit <= 0)
+            return 0;
+        if (stats != null)
+            stats.countQuery();
+        int self = position[i];
+        int c0 = cellOf[self];
+        double qx = x[self], qy = y[self], qw = weight[self];
+        // 先扫描所在网格，最有可能尽早达到limit
+        int count = countCell(c0, self, qx, qy, qw, minDis, limit, 0, stats);
+        for (int dx = -1; dx <= 1 && count < limit; dx++) {
+            for (int dy = -1; dy <= 1 && count < limit; dy++) {
+                if (dx == 0 && dy == 0)
+                    continue;
+                int c = lookup(cellX[c0] + dx, cellY[c0] + dy);
+                if (c >= 0)
+                    count = countCell(c, self, qx, qy, qw, minDis, limit, count, stats);
+            }
+        }
+        return count;
+    }
+
+
+    private int countCell(int c, int self, double qx, double qy, double qw, double minDis, int limit, int count, SearchStats stats) {
+        if (stats != null)
+            stats.countVisit();
+        for (int pos = cellStart[c]; pos < cellStart[c + 1]; pos++) {
+            if (pos == self)
+                continue;
+            if (stats != null)
+                stats.countDistance();
+            if (within(pos, qx, qy, qw, minDis) && ++count >= limit)
+                return count;
+        }
+        return count;
+    }
+
+
+    /**
+     * 与Point.getDistance相同的带权距离不超过minDis（网格按平面坐标划分，只支持带权欧氏距离）
+     */
+    private boolean within(int pos, double qx, double qy, double qw, double minDis) {
+        return DistanceKernel.WEIGHTED.within(qx, qy, qw, x[pos], y[pos], weight[pos], minDis);
+    }
+
+
+    private void checkRadius(double minDis) {
+        if (minDis > cellSize)
+            throw new IllegalArgumentException("radius " + minDis + " exceeds grid cell size " + cellSize);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * 球面距离（haversine公式），X为经度、Y为纬度（单位：度），距离单位为米，忽略权重
+ * <p>
+ * hav(d/R) = hav(dLat) + cos(lat1) * cos(lat2) * hav(dLon)，hav(t) = sin^2(t/2)。
+ * 比较时直接比较hav值与hav(eps/R)，无需asin和sqrt；hav(eps/R)和查询点纬度的余弦在每次查询中只计算一次（见prepareThreshold、prepareQuery）。
+ * 经度差按跨越180度经线的较短一侧计算。
+ */
+public final class HaversineKernel implements DistanceKernel {
+
+    // 地球平均半径（米）
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private static double hav(double radians) {
+        double s = Math.sin(radians / 2);
+        return s * s;
+    }
+
+    /**
+     * @return 距离eps（米）对应的hav阈值
+     */
+    private static double threshold(double eps) {
+        return eps >= Math.PI * EARTH_RADIUS ? 1 : hav(eps / EARTH_RADIUS);
+    }
+
+    /**
+     * @return 两经度间较短一侧的差（度，[0, 180]）
+     */
+    private static double lonGap(double lon1, double lon2) {
+        double d = Math.abs(lon1 - lon2) % 360;
+        return d > 180 ? 360 - d : d;
+    }
+
+    private static double haversine(double x1, double y1, double x2, double y2) {
+        return hav(Math.toRadians(y2 - y1)) + Math.cos(Math.toRadians(y1)) * Math.cos(Math.toRadians(y2)) * hav(Math.toRadians(lonGap(x1, x2)));
+    }
+
+    @Override
+    public double distance(double x1, double y1, double w1, double x2, double y2, double w2) {
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, haversine(x1, y1, x2, y2))));
+    }
+
+    @Override
+    public boolean within(double x1, double y1, double w1, double x2, double y2, double w2, double eps) {
+        return withinPrepared(x1, y1, w1, prepareQuery(x1, y1), x2, y2, w2, prepareThreshold(eps));
+    }
+
+    @Override
+    public boolean axisOutside(int dim, double gap, double qx, double qy, double qw, double minWeight, double eps) {
+        return axisOutsidePrepared(dim, gap, qx, qy, qw, prepareQuery(qx, qy), minWeight, prepareThreshold(eps));
+    }
+
+    @Override
+    public boolean boxOutside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double minWeight, double eps) {
+        return boxOutsidePrepared(qx, qy, qw, prepareQuery(qx, qy), minX, maxX, minY, maxY, minWeight, prepareThreshold(eps));
+    }
+
+    @Override
+    public boolean boxInside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double maxWeight, double eps) {
+        return boxInsidePrepared(qx, qy, qw, prepareQuery(qx, qy), minX, maxX, minY, maxY, maxWeight, prepareThreshold(eps));
+    }
+
+    /**
+     * @return hav(eps/R)，与两点的hav值直接比较
+     */
+    @Override
+    public double prepareThreshold(double eps) {
+        return threshold(eps);
+    }
+
+    /**
+     * @return 查询点纬度的余弦
+     */
+    @Override
+    public double prepareQuery(double qx, double qy) {
+        return Math.cos(Math.toRadians(qy));
+    }
+
+    @Override
+    public boolean withinPrepared(double qx, double qy, double qw, double factor, double x, double y, double w, double threshold) {
+        return hav(Math.toRadians(y - qy)) + factor * Math.cos(Math.toRadians(y)) * hav(Math.toRadians(lonGap(qx, x))) <= threshold;
+    }
+
+    /**
+     * 纬度差直接给出距离下界；经度差对应的距离取决于两点纬度，高纬度时可以任意小，因此不剪枝
+     */
+    @Override
+    public boolean axisOutsidePrepared(int dim, double gap, double qx, double qy, double qw, double factor, double minWeight, double threshold) {
+        return dim == 1 && hav(Math.toRadians(Math.min(Math.abs(gap), 180))) > threshold;
+    }
+
+    /**
+     * 下界：取矩形内最小的纬度差、经度差及最小的cos(纬度)，cos在[-90, 90]上的最小值在区间端点取得
+     */
+    @Override
+    public boolean boxOutsidePrepared(double qx, double qy, double qw, double factor, double minX, double maxX, double minY, double maxY,
+                                      double minWeight, double threshold) {
+        double dLat = Math.max(Math.max(minY - qy, qy - maxY), 0);
+        double dLon = qx >= minX && qx <= maxX ? 0 : Math.min(lonGap(qx, minX), lonGap(qx, maxX));
+        double minCos = Math.min(Math.cos(Math.toRadians(minY)), Math.cos(Math.toRadians(maxY)));
+        double bound = hav(Math.toRadians(dLat)) + factor * Math.max(minCos, 0) * hav(Math.toRadians(dLon));
+        return bound > threshold;
+    }
+
+    /**
+     * 上界：取矩形内最大的纬度差、经度差及最大的cos(纬度)
+     */
+    @Override
+    public boolean boxInsidePrepared(double qx, double qy, double qw, double factor, double minX, double maxX, double minY, double maxY,
+                                     double maxWeight, double threshold) {
+        if (maxX - minX >= 180)
+            return false;
+        double dLat = Math.max(qy - minY, maxY - qy);
+        double dLon = Math.max(lonGap(qx, minX), lonGap(qx, maxX));
+        double maxCos = minY <= 0 && maxY >= 0 ? 1 : Math.max(Math.cos(Math.toRadians(minY)), Math.cos(Math.toRadians(maxY)));
+        double bound = hav(Math.toRadians(Math.min(dLat, 180))) + factor * maxCos * hav(Math.toRadians(dLon));
+        return bound <= threshold;
+    }
+
+    /**
+     * 球面距离只对经纬度定义，不能由各维坐标差的平方和得到
+     */
+    @Override
+    public boolean withinSquared(double d2, double w1, double w2, double eps) {
+        throw new UnsupportedOperationException("HaversineKernel is defined on longitude/latitude only and does not support squared coordinate distances");
+    }
+
+    @Override
+    public double distance(double d2, double w1, double w2) {
+        throw new UnsupportedOperationException("HaversineKernel is defined on longitude/latitude only and does not support squared coordinate distances");
+    }
+}
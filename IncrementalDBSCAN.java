@@ -0,0 +1,780 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 增量DBSCAN（Ester et al., Incremental Clustering for Mining in a Data Warehousing Environment, VLDB 1998）
+ * <p>
+ * 点可以随时插入和删除，不需要重新聚类：插入或删除一个点只改变其eps邻域内点的近邻数，
+ * 只有核心点状态发生变化的点需要进一步处理——
+ * 插入时新核心点与邻域内核心点所在的聚簇合并；删除时检查失去核心点的邻域内的核心点是否仍然密度相连，
+ * 不再相连时用BFS为分裂出的各部分重新编号。每次更新的代价与局部邻域大小成正比，只有聚簇分裂时
+ * 与分裂的聚簇大小成正比（与原论文相同）。
+ * <p>
+ * 近邻查询使用可更新的均匀网格（边长radius），每个非空网格保存其中点的编号。
+ * 点的聚簇通过并查集间接保存：合并聚簇只需一次union，不需要修改聚簇中每个点的编号。
+ * 距离为与Point.getDistance相同的带权距离，近邻数不含点本身，与DBSCAN.findStoreCores一致；
+ * 与多个聚簇的核心点相邻的边界点归属于其中任意一个聚簇。
+ * <p>
+ * 任何时候都可以查询点的聚簇编号；聚簇编号在聚簇存在期间不变（合并时保留其中一个），
+ * 聚簇消失后其编号可能被新聚簇复用。非线程安全。
+ * <p>
+ * 设置ClusterListener后，可以用beginBatch/endBatch将多次更新合为一批，endBatch时一次性通知这一批的聚簇变化；
+ * 不在批中的单次insert/delete自成一批。同一批中删除的点编号在该批结束后才会被复用。
+ */
+public class IncrementalDBSCAN {
+
+    public static final int NOISE = 0;
+
+    private final double radius;
+    private final int minPoints;
+
+    // 点编号 -> 坐标及权重；删除的编号之后插入时复用
+    private double[] x;
+    private double[] y;
+    private double[] weight;
+    private final BitSet alive = new BitSet();
+    private final IntList freeIds = new IntList();
+    private int idLimit;
+    private int size;
+    // 近邻数（不含点本身）
+    private int[] neighborCount;
+    // 聚簇句柄，NOISE为噪声；点的聚簇编号为findCluster(label)
+    private int[] label;
+    // 所在网格编号及在网格成员列表中的位置
+    private int[] cellOf;
+    private int[] slotOf;
+
+    // 网格坐标 -> 网格编号的开放寻址哈希表（线性探查）；网格变空时删除，编号放入freeCells供新网格复用，
+    // 因此网格数和哈希表大小只与同时非空的网格数有关，与点移动过的范围无关
+    private long[] tableKeys;
+    private int[] tableCells;
+    private int tableMask;
+    private IntList[] cellMembers;
+    private long[] cellKeys;
+    private int cellCount;
+    private final IntList freeCells = new IntList();
+
+    // 聚簇句柄的并查集，句柄0不使用
+    private int[] parent;
+    private int handleCount = 1;
+    private final IntList freeHandles = new IntList();
+
+    // BFS及去重用的标记，mark[i] == epoch表示已标记
+    private int[] mark;
+    private int epoch;
+
+    // 变化跟踪：batch为当前批次号，touched[i] == batch的点记录了批次开始前的聚簇before[i]
+    private ClusterListener listener;
+    private int batch;
+    private boolean inBatch;
+    private int[] touched;
+    private int[] before;
+    private final IntList touchedIds = new IntList();
+    private final IntList addedIds = new IntList();
+    private final IntList removedIds = new IntList();
+    private final IntList removedClusters = new IntList();
+    private final IntList merges = new IntList();
+    private final IntList pendingFree = new IntList();
+    // 句柄在第几批中分配，本批新分配的句柄对外不可见
+    private int[] handleBatch;
+
+    public IncrementalDBSCAN(double radius, int minPoints) {
+        if (!(radius > 0))
+            throw new IllegalArgumentException("radius must be positive: " + radius);
+        this.radius = radius;
+        this.minPoints = minPoints;
+        int capacity = 16;
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.weight = new double[capacity];
+        this.neighborCount = new int[capacity];
+        this.label = new int[capacity];
+        this.cellOf = new int[capacity];
+        this.slotOf = new int[capacity];
+        this.mark = new int[capacity];
+        this.tableKeys = new long[capacity];
+        this.tableCells = new int[capacity];
+        this.tableMask = capacity - 1;
+        Arrays.fill(tableCells, -1);
+        this.cellMembers = new IntList[capacity];
+        this.cellKeys = new long[capacity];
+        this.parent = new int[capacity];
+        this.handleBatch = new int[capacity];
+        this.touched = new int[capacity];
+        this.before = new int[capacity];
+    }
+
+
+    /**
+     * 设置聚簇变化的监听器，为null时不跟踪变化
+     */
+    public void setListener(ClusterListener listener) {
+        this.listener = listener;
+    }
+
+
+    /**
+     * 开始一批更新，直到endBatch之前的insert/delete合并通知
+     */
+    public void beginBatch() {
+        if (inBatch)
+            throw new IllegalStateException("batch already started");
+        inBatch = true;
+        batch++;
+    }
+
+
+    /**
+     * 结束一批更新，通知这一批的聚簇变化
+     */
+    public void endBatch() {
+        if (!inBatch)
+            throw new IllegalStateException("no batch started");
+        inBatch = false;
+        if (listener != null) {
+            for (int k = 0; k < merges.size(); k += 2)
+                listener.clustersMerged(merges.get(k), merges.get(k + 1));
+            // 批中记录的聚簇可能之后又并入了其他聚簇，沿并查集得到应用合并事件之后的编号
+            for (int k = 0; k < removedIds.size(); k++)
+                listener.pointRemoved(removedIds.get(k), afterMerges(removedClusters.get(k)));
+            for (int k = 0; k < addedIds.size(); k++) {
+                int id = addedIds.get(k);
+                if (contains(id))
+                    listener.pointAdded(id, getClusterID(id));
+            }
+            for (int k = 0; k < touchedIds.size(); k++) {
+                int id = touchedIds.get(k);
+                if (!contains(id) || before[id] < 0)
+                    continue;
+                int cluster = getClusterID(id);
+                int old = afterMerges(before[id]);
+                if (cluster != old)
+                    listener.pointLabeled(id, old, cluster);
+            }
+        }
+        merges.clear();
+        removedIds.clear();
+        removedClusters.clear();
+        addedIds.clear();
+        touchedIds.clear();
+        for (int k = 0; k < pendingFree.size(); k++)
+            freeIds.add(pendingFree.get(k));
+        pendingFree.clear();
+        compactIfNeeded();
+    }
+
+
+    /**
+     * 批中已存在的聚簇只会并入其他已存在的聚簇（见union），其当前的根节点即为依次应用合并事件后的编号
+     */
+    private int afterMerges(int cluster) {
+        return cluster == NOISE ? NOISE : findCluster(cluster);
+    }
+
+
+    /**
+     * 在点的聚簇句柄改变之前调用，记录批次开始前的聚簇；本批新增的点记为-1
+     */
+    private void touch(int id, boolean added) {
+        if (listener == null || touched[id] == batch)
+            return;
+        touched[id] = batch;
+        before[id] = added ? -1 : label[id] == NOISE ? NOISE : findCluster(label[id]);
+        touchedIds.add(id);
+    }
+
+
+    /**
+     * 插入一个点
+     *
+     * @return 点编号
+     */
+    public int insert(double x, double y, double weight) {
+        boolean single = !inBatch;
+        if (single)
+            beginBatch();
+        int id = freeIds.isEmpty() ? idLimit++ : freeIds.removeLast();
+        ensureCapacity(id + 1);
+        this.x[id] = x;
+        this.y[id] = y;
+        this.weight[id] = weight;
+        alive.set(id);
+        size++;
+
+        // step 近邻数：新点的邻域内每个点的近邻数加1
+        IntList neighbors = new IntList();
+        searchRange(id, neighbors);
+        addToGrid(id);
+        neighborCount[id] = neighbors.size();
+        label[id] = NOISE;
+        touch(id, true);
+        if (listener != null)
+            addedIds.add(id);
+        IntList newCores = new IntList();
+        if (isCore(id))
+            newCores.add(id);
+        for (int k = 0; k < neighbors.size(); k++) {
+            int q = neighbors.get(k);
+            if (++neighborCount[q] == minPoints)
+                newCores.add(q);
+        }
+
+        // step 新核心点与邻域内的核心点合并为同一聚簇，邻域内的噪声点成为边界点
+        for (int k = 0; k < newCores.size(); k++) {
+            touch(newCores.get(k), false);
+            label[newCores.get(k)] = newHandle();
+        }
+        for (int k = 0; k < newCores.size(); k++) {
+            int c = newCores.get(k);
+            IntList around = c == id ? neighbors : neighbors(c);
+            for (int j = 0; j < around.size(); j++) {
+                int q = around.get(j);
+                if (isCore(q))
+                    union(label[c], label[q]);
+                else if (label[q] == NOISE) {
+                    touch(q, false);
+                    label[q] = label[c];
+                }
+            }
+        }
+        if (!isCore(id) && label[id] == NOISE)
+            label[id] = borderLabel(neighbors);
+        if (single)
+            endBatch();
+        return id;
+    }
+
+
+    /**
+     * 删除一个点
+     *
+     * @param id 点编号
+     */
+    public void delete(int id) {
+        checkAlive(id);
+        boolean single = !inBatch;
+        if (single)
+            beginBatch();
+        IntList neighbors = neighbors(id);
+        boolean wasCore = isCore(id);
+        touch(id, false);
+        if (listener != null && before[id] >= 0) {
+            removedIds.add(id);
+            removedClusters.add(before[id]);
+        }
+        removeFromGrid(id);
+        alive.clear(id);
+        pendingFree.add(id);
+        size--;
+        label[id] = NOISE;
+        neighborCount[id] = 0;
+
+        // step 邻域内每个点的近邻数减1，记录因此失去核心点状态的点
+        IntList lost = new IntList();
+        for (int k = 0; k < neighbors.size(); k++) {
+            int q = neighbors.get(k);
+            if (neighborCount[q]-- == minPoints)
+                lost.add(q);
+        }
+        if (wasCore || !lost.isEmpty())
+            updateAfterDelete(neighbors, wasCore, lost);
+        if (single)
+            endBatch();
+    }
+
+
+    /**
+     * 删除点后处理失去的核心点：检查聚簇是否分裂，并重新确定周围边界点的聚簇
+     *
+     * @param neighbors 被删除点的邻域
+     * @param wasCore   被删除点是否为核心点
+     * @param lost      因删除而失去核心点状态的点
+     */
+    private void updateAfterDelete(IntList neighbors, boolean wasCore, IntList lost) {
+        // step 失去的核心点周围的核心点可能不再密度相连；周围的边界点可能不再与核心点相邻
+        IntList seeds = new IntList();
+        IntList affected = new IntList();
+        if (wasCore)
+            classify(neighbors, seeds, affected);
+        for (int k = 0; k < lost.size(); k++) {
+            int q = lost.get(k);
+            affected.add(q);
+            classify(neighbors(q), seeds, affected);
+        }
+        splitClusters(seeds);
+
+        // step 重新确定受影响的边界点的聚簇，噪声点不会因删除而成为边界点
+        epoch++;
+        for (int k = 0; k < affected.size(); k++) {
+            int q = affected.get(k);
+            if (mark[q] == epoch || label[q] == NOISE || isCore(q))
+                continue;
+            mark[q] = epoch;
+            touch(q, false);
+            label[q] = borderLabel(neighbors(q));
+        }
+    }
+
+
+    /**
+     * 将点集合分为核心点和非核心点
+     */
+    private void classify(IntList points, IntList cores, IntList others) {
+        for (int k = 0; k < points.size(); k++) {
+            int q = points.get(k);
+            if (isCore(q))
+                cores.add(q);
+            else
+                others.add(q);
+        }
+    }
+
+
+    /**
+     * 检查同一聚簇中的种子核心点是否仍然密度相连，不相连时为每个连通部分分配新的聚簇句柄
+     *
+     * @param seeds 与失去的核心点相邻的核心点
+     */
+    private void splitClusters(IntList seeds) {
+        // step 按所在聚簇分组，并去掉重复的种子
+        epoch++;
+        IntList unique = new IntList();
+        for (int k = 0; k < seeds.size(); k++) {
+            int s = seeds.get(k);
+            if (mark[s] != epoch) {
+                mark[s] = epoch;
+                unique.add(s);
+            }
+        }
+        long[] byCluster = new long[unique.size()];
+        for (int k = 0; k < unique.size(); k++)
+            byCluster[k] = (long) findCluster(label[unique.get(k)]) << 32 | unique.get(k);
+        Arrays.sort(byCluster);
+
+        for (int from = 0, to; from < byCluster.length; from = to) {
+            int cluster = (int) (byCluster[from] >>> 32);
+            to = from + 1;
+            while (to < byCluster.length && (int) (byCluster[to] >>> 32) == cluster)
+                to++;
+            if (to - from == 1)
+                continue;
+
+            // step 从第一个种子开始BFS，到达同组所有种子即说明没有分裂
+            epoch++;
+            int[] group = new int[to - from];
+            for (int k = from; k < to; k++)
+                group[k - from] = (int) byCluster[k];
+            IntList component = new IntList();
+            if (expandComponent(group[0], group, component))
+                continue;
+            relabel(component, cluster);
+            for (int k = 1; k < group.length; k++) {
+                if (mark[group[k]] == epoch)
+                    continue;
+                component.clear();
+                expandComponent(group[k], null, component);
+                relabel(component, cluster);
+            }
+        }
+    }
+
+
+    /**
+     * 从核心点start开始沿核心点BFS，将到达的核心点加入component（以epoch标记）
+     *
+     * @param start     起始核心点
+     * @param targets   需要到达的核心点，全部到达时提前结束；为null时遍历整个连通部分
+     * @param component 到达的核心点
+     * @return targets全部到达时返回true
+     */
+    private boolean expandComponent(int start, int[] targets, IntList component) {
+        int remaining = targets == null ? -1 : targets.length;
+        // 用负值临时标记targets，到达时计数
+        if (targets != null)
+            for (int t : targets)
+                mark[t] = -epoch;
+        mark[start] = epoch;
+        component.add(start);
+        if (targets != null && --remaining == 0)
+            return true;
+        IntList neighbors = new IntList();
+        for (int head = 0; head < component.size(); head++) {
+            neighbors.clear();
+            searchRange(component.get(head), neighbors);
+            for (int k = 0; k < neighbors.size(); k++) {
+                int q = neighbors.get(k);
+                if (mark[q] == epoch || !isCore(q))
+                    continue;
+                if (mark[q] == -epoch && --remaining == 0)
+                    return true;
+                mark[q] = epoch;
+                component.add(q);
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * 为分裂出的一个连通部分分配新的聚簇句柄，与其相邻且原属于该聚簇的边界点一并更新
+     *
+     * @param component 连通部分的核心点
+     * @param cluster   原聚簇编号
+     */
+    private void relabel(IntList component, int cluster) {
+        int handle = newHandle();
+        IntList neighbors = new IntList();
+        for (int k = 0; k < component.size(); k++) {
+            int c = component.get(k);
+            touch(c, false);
+            label[c] = handle;
+            neighbors.clear();
+            searchRange(c, neighbors);
+            for (int j = 0; j < neighbors.size(); j++) {
+                int q = neighbors.get(j);
+                if (!isCore(q) && label[q] != NOISE && findCluster(label[q]) == cluster) {
+                    touch(q, false);
+                    label[q] = handle;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return 邻域内任意一个核心点的聚簇句柄，没有核心点时为NOISE
+     */
+    private int borderLabel(IntList neighbors) {
+        for (int k = 0; k < neighbors.size(); k++)
+            if (isCore(neighbors.get(k)))
+                return label[neighbors.get(k)];
+        return NOISE;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getMinPoints() {
+        return minPoints;
+    }
+
+    /**
+     * @return 非空网格数
+     */
+    public int getCellCount() {
+        return cellCount - freeCells.size();
+    }
+
+    /**
+     * @return 点编号是否对应一个未删除的点
+     */
+    public boolean contains(int id) {
+        return id >= 0 && alive.get(id);
+    }
+
+    public double getX(int id) {
+        checkAlive(id);
+        return x[id];
+    }
+
+    public double getY(int id) {
+        checkAlive(id);
+        return y[id];
+    }
+
+    public double getWeight(int id) {
+        checkAlive(id);
+        return weight[id];
+    }
+
+    public boolean isCore(int id) {
+        return neighborCount[id] >= minPoints && alive.get(id);
+    }
+
+    /**
+     * @return 点当前所在聚簇的编号，噪声点为NOISE
+     */
+    public int getClusterID(int id) {
+        checkAlive(id);
+        return label[id] == NOISE ? NOISE : findCluster(label[id]);
+    }
+
+    /**
+     * @return 近邻数（不含点本身）
+     */
+    public int getNeighborCount(int id) {
+        checkAlive(id);
+        return neighborCount[id];
+    }
+
+
+    /**
+     * 当前所有点的快照，包含坐标、聚簇编号及核心点标记
+     *
+     * @param ids 快照中每个下标对应的点编号，可为null
+     * @return PointStore
+     */
+    public PointStore toStore(IntList ids) {
+        PointStore store = new PointStore(size);
+        for (int id = alive.nextSetBit(0); id >= 0; id = alive.nextSetBit(id + 1)) {
+            int i = store.add(x[id], y[id], weight[id]);
+            store.setClusterID(i, getClusterID(id));
+            store.setCore(i, isCore(id));
+            store.setVisited(i, true);
+            if (ids != null)
+                ids.add(id);
+        }
+        return store;
+    }
+
+
+    /**
+     * 当前点的邻域（不含点本身）
+     *
+     * @param id 点编号
+     * @return 邻域内的点编号
+     */
+    public IntList neighbors(int id) {
+        checkAlive(id);
+        IntList result = new IntList();
+        searchRange(id, result);
+        return result;
+    }
+
+
+    private void checkAlive(int id) {
+        if (!contains(id))
+            throw new IllegalArgumentException("no point with id " + id);
+    }
+
+
+    private void ensureCapacity(int n) {
+        if (n <= x.length)
+            return;
+        int capacity = Math.max(n, x.length << 1);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        weight = Arrays.copyOf(weight, capacity);
+        neighborCount = Arrays.copyOf(neighborCount, capacity);
+        label = Arrays.copyOf(label, capacity);
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        mark = Arrays.copyOf(mark, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+        before = Arrays.copyOf(before, capacity);
+    }
+
+
+    // ---------------- 聚簇句柄 ----------------
+
+    private int newHandle() {
+        int h;
+        if (!freeHandles.isEmpty()) {
+            h = freeHandles.removeLast();
+        } else {
+            if (handleCount == parent.length) {
+                parent = Arrays.copyOf(parent, parent.length << 1);
+                handleBatch = Arrays.copyOf(handleBatch, parent.length);
+            }
+            h = handleCount++;
+        }
+        parent[h] = h;
+        handleBatch[h] = batch;
+        return h;
+    }
+
+
+    private int findCluster(int h) {
+        int root = h;
+        while (parent[root] != root)
+            root = parent[root];
+        while (parent[h] != root) {
+            int next = parent[h];
+            parent[h] = root;
+            h = next;
+        }
+        return root;
+    }
+
+
+    /**
+     * 合并两个聚簇：本批之前已存在的聚簇优先作为新的根（其编号保持不变），否则编号较小的根节点作为新的根
+     * 两个聚簇都已存在时记录合并事件
+     */
+    private void union(int a, int b) {
+        int ra = findCluster(a), rb = findCluster(b);
+        if (ra == rb)
+            return;
+        boolean freshA = handleBatch[ra] == batch, freshB = handleBatch[rb] == batch;
+        int into = freshA != freshB ? (freshA ? rb : ra) : Math.min(ra, rb);
+        int from = into == ra ? rb : ra;
+        parent[from] = into;
+        if (listener != null && handleBatch[from] != batch) {
+            merges.add(from);
+            merges.add(into);
+        }
+    }
+
+
+    /**
+     * 已分配的句柄明显多于点数时，使每个点的句柄直接指向聚簇编号（根节点），回收其余句柄；
+     * 聚簇编号不变，均摊代价为每次更新O(1)
+     */
+    private void compactIfNeeded() {
+        if (handleCount - freeHandles.size() <= 2 * size + 64)
+            return;
+        boolean[] used = new boolean[handleCount];
+        for (int id = alive.nextSetBit(0); id >= 0; id = alive.nextSetBit(id + 1)) {
+            if (label[id] != NOISE) {
+                label[id] = findCluster(label[id]);
+                used[label[id]] = true;
+            }
+        }
+        freeHandles.clear();
+        for (int h = handleCount - 1; h > 0; h--) {
+            if (used[h])
+                parent[h] = h;
+            else
+                freeHandles.add(h);
+        }
+    }
+
+
+    // ---------------- 网格 ----------------
+
+    private int cellCoord(double v) {
+        return (int) Math.floor(v / radius);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & tableMask;
+    }
+
+    /**
+     * @return 网格编号，网格不存在时返回-1
+     */
+    private int lookup(int cx, int cy) {
+        long key = key(cx, cy);
+        for (int s = slot(key); ; s = (s + 1) & tableMask) {
+            int c = tableCells[s];
+            if (c < 0 || tableKeys[s] == key)
+                return c;
+        }
+    }
+
+
+    private void addToGrid(int id) {
+        int cx = cellCoord(x[id]), cy = cellCoord(y[id]);
+        int c = lookup(cx, cy);
+        if (c < 0) {
+            if (!freeCells.isEmpty()) {
+                // 复用已变空网格的编号及其成员列表
+                c = freeCells.removeLast();
+            } else {
+                c = cellCount++;
+                if (c == cellMembers.length) {
+                    cellMembers = Arrays.copyOf(cellMembers, c << 1);
+                    cellKeys = Arrays.copyOf(cellKeys, c << 1);
+                }
+                cellMembers[c] = new IntList(4);
+                if (2 * cellCount > tableCells.length)
+                    rehash(tableCells.length << 1);
+            }
+            cellKeys[c] = key(cx, cy);
+            insertCell(cellKeys[c], c);
+        }
+        cellOf[id] = c;
+        slotOf[id] = cellMembers[c].size();
+        cellMembers[c].add(id);
+    }
+
+
+    private void removeFromGrid(int id) {
+        int c = cellOf[id];
+        IntList members = cellMembers[c];
+        int last = members.removeLast();
+        if (last != id) {
+            members.set(slotOf[id], last);
+            slotOf[last] = slotOf[id];
+        }
+        if (members.isEmpty()) {
+            deleteCell(cellKeys[c]);
+            freeCells.add(c);
+        }
+    }
+
+
+    /**
+     * 从哈希表中删除网格：线性探查表不能直接置空，
+     * 将之后同一探查序列中的项向前移到空位，保证其余的键仍可查到
+     */
+    private void deleteCell(long key) {
+        int hole = slot(key);
+        while (tableKeys[hole] != key || tableCells[hole] < 0)
+            hole = (hole + 1) & tableMask;
+        for (int s = (hole + 1) & tableMask; tableCells[s] >= 0; s = (s + 1) & tableMask) {
+            int home = slot(tableKeys[s]);
+            // home不在(hole, s]之间时，该项可以移到hole
+            if (((s - home) & tableMask) >= ((s - hole) & tableMask)) {
+                tableKeys[hole] = tableKeys[s];
+                tableCells[hole] = tableCells[s];
+                hole = s;
+            }
+        }
+        tableCells[hole] = -1;
+    }
+
+
+    private void insertCell(long key, int c) {
+        int s = slot(key);
+        while (tableCells[s] >= 0)
+            s = (s + 1) & tableMask;
+        tableKeys[s] = key;
+        tableCells[s] = c;
+    }
+
+
+    private void rehash(int capacity) {
+        long[] keys = tableKeys;
+        int[] cells = tableCells;
+        tableKeys = new long[capacity];
+        tableCells = new int[capacity];
+        tableMask = capacity - 1;
+        Arrays.fill(tableCells, -1);
+        for (int s = 0; s < cells.length; s++)
+            if (cells[s] >= 0)
+                insertCell(keys[s], cells[s]);
+    }
+
+
+    /**
+     * 扫描点所在网格及周围3x3个网格，将范围内的点（不含点本身）追加到result中
+     */
+    private void searchRange(int id, IntList result) {
+        double qx = x[id], qy = y[id], qw = weight[id];
+        int cx = cellCoord(qx), cy = cellCoord(qy);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int c = lookup(cx + dx, cy + dy);
+                if (c < 0)
+                    continue;
+                IntList members = cellMembers[c];
+                for (int k = 0; k < members.size(); k++) {
+                    int q = members.get(k);
+                    if (q != id && DistanceKernel.WEIGHTED.within(qx, qy, qw, x[q], y[q], weight[q], radius))
+                        result.add(q);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/**
+ * 以double为键的最小堆，元素为[0, capacity)的整数
+ * <p>
+ * 记录每个元素在堆中的位置，可以直接降低已在堆中元素的键，
+ * 堆中没有重复元素，也不需要为每个元素创建对象。
+ */
+class IndexedHeap {
+    private final int[] heap;
+    private final double[] key;
+    // 元素在heap中的位置，不在堆中时为-1
+    private final int[] position;
+    private int size;
+
+    IndexedHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.key = new double[capacity];
+        this.position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int e) {
+        return position[e] >= 0;
+    }
+
+    public double getKey(int e) {
+        return key[e];
+    }
+
+
+    /**
+     * 元素不在堆中时以k为键加入，已在堆中且k更小时降低其键
+     *
+     * @return 堆是否改变
+     */
+    public boolean insertOrDecrease(int e, double k) {
+        int pos = position[e];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = e;
+            position[e] = pos;
+        } else if (k >= key[e]) {
+            return false;
+        }
+        key[e] = k;
+        siftUp(pos);
+        return true;
+    }
+
+
+    /**
+     * 取出键最小的元素，键相同时先取出下标小的元素
+     */
+    public int poll() {
+        if (size == 0)
+            throw new IllegalStateException("heap is empty");
+        int top = heap[0];
+        position[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+
+    private boolean less(int a, int b) {
+        return key[a] < key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int pos) {
+        int e = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = heap[parent];
+            if (!less(e, p))
+                break;
+            heap[pos] = p;
+            position[p] = pos;
+            pos = parent;
+        }
+        heap[pos] = e;
+        position[e] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int e = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && less(heap[child + 1], heap[child]))
+                child++;
+            int c = heap[child];
+            if (!less(c, e))
+                break;
+            heap[pos] = c;
+            position[c] = pos;
+            pos = child;
+        }
+        heap[pos] = e;
+        position[e] = pos;
+    }
+}
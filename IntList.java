@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/**
+ * 可增长的int数组，避免使用ArrayList<Integer>带来的装箱开销
+ */
+public class IntList {
+    private int[] data;
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    public void add(int value) {
+        if (size == data.length)
+            data = Arrays.copyOf(data, data.length << 1);
+        data[size++] = value;
+    }
+
+    public int get(int i) {
+        return data[i];
+    }
+
+    public void set(int i, int value) {
+        data[i] = value;
+    }
+
+    /**
+     * 删除并返回最后一个元素
+     */
+    public int removeLast() {
+        if (size == 0)
+            throw new IndexOutOfBoundsException("list is empty");
+        return data[--size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空元素，保留已分配的数组以便复用
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -1,5 +1,3 @@
-
-
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
@@ -14,16 +12,40 @@ public class MainClass {
         String destFile = "E:\\Study\\项目\\生态福建\\Process\\outPoints.txt";
         double radius = 5;
         int minPoints = 3;
-        int deep = 1;
 
         Logger logger = Logger.getLogger("DBSCAN");
         PropertyConfigurator.configure("log4j.properties");
         //System.out.println(">>> (2/8) Logger Configure Finished ...");
         logger.info(" (1/6) Logger Configure Finished ...");
 
-        // step 读取数据
-        ArrayList<Point> allPoints = Data.readDataToPoint(sourcePath);
-        ArrayList<TreeNode> allNodes = Data.readDataToTreeNode(sourcePath);
+        RunStats stats = run(sourcePath, destFile, radius, minPoints, logger);
+        logger.info(" Run Statistics:\r\n" + stats);
+
+        System.out.println(">>> Process Finished ...");
+
+        System.out.println();
+    }
+
+
+    /**
+     * 执行一次完整的聚类：读取、建树、找核心点、扩张、写出
+     *
+     * @param sourcePath 输入文件
+     * @param destFile   输出文件
+     * @param radius     距离阈值
+     * @param minPoints  核心点的近邻数下限
+     * @param logger     日志
+     * @return 各阶段耗时、堆内存占用及近邻查询计数
+     */
+    public static RunStats run(String sourcePath, String destFile, double radius, int minPoints, Logger logger) {
+        int deep = 1;
+        RunStats stats = new RunStats();
+
+        // step 读取数据，只读取一次文件
+        stats.begin("read");
+        PointStore store = Data.readDataToStore(sourcePath, Runtime.getRuntime().availableProcessors());
+        ArrayList<TreeNode> allNodes = Data.toTreeNodes(store);
+        stats.end();
         //System.out.println(">>> (3/8) Reading Data Finished ...");
         logger.info(" (2/6) Reading Data Finished ...");
 
@@ -31,33 +53,80 @@ public class MainClass {
         DBSCAN dbscan = new DBSCAN(radius, minPoints);
 
         // step 建立KD-Tree
-        TreeNode root = TreeNode.buildKDTree(allNodes, deep);
+        stats.begin("build");
+        TreeNode root = TreeNode.buildKDTreeParallel(allNodes, deep);
+        stats.end();
         //System.out.println(">>> (4/8) Building KD-Tree Finished ...");
         logger.info(" (3/6) Building KD-Tree Finished ...");
 
         // step 得到核心点
-        ArrayList<Point> cores1 = dbscan.findPointCores(allPoints);
-        ArrayList<TreeNode> cores = dbscan.findTreeNodeCores(minPoints, radius, root, allNodes, logger);
+        stats.begin("cores");
+        ArrayList<TreeNode> cores = dbscan.findTreeNodeCores(minPoints, radius, root, allNodes, stats.getSearchStats());
+        stats.end();
         if (cores == null || cores.size() == 0) {
             System.out.println("Can not find any core points.");
-            return;
+            return stats;
         }
         //System.out.println(">>> (5/8) Finding Core Point Finished ...");
         logger.info(" (4/6) Finding Core Point Finished ...");
 
         // step 开始计算
-        //dbscan.processPoint(cores, allPoints);
+        stats.begin("expand");
         dbscan.processTreeNode(cores);
+        stats.end();
         //System.out.println(">>> (6/8) Processing Algorithm Finished ...");
         logger.info(" (5/6) Processing Algorithm Finished ...");
 
         // step 保存结果
+        stats.begin("write");
         Data.writeTreeNodeData(cores, destFile);
+        stats.end();
         //System.out.println(">>> (6/8) Writing Data Finished ...");
         logger.info(" (6/6) Writing Data Finished ...");
+        return stats;
+    }
 
-        System.out.println(">>> Process Finished ...");
 
-        System.out.println();
+    /**
+     * 对多个radius聚类：以最大的radius运行一次OPTICS，再为每个radius线性提取DBSCAN结果，
+     * 代替对每个radius重新建树、找核心点和扩张
+     *
+     * @param sourcePath 输入文件
+     * @param radii      待比较的radius
+     * @param minPoints  核心点的近邻数下限
+     * @param logger     日志
+     * @return 每个radius对应的聚簇个数
+     */
+    public static int[] sweep(String sourcePath, double[] radii, int minPoints, Logger logger) {
+        double maxRadius = 0;
+        for (double r : radii)
+            maxRadius = Math.max(maxRadius, r);
+
+        RunStats stats = new RunStats();
+        stats.begin("read");
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        PointStore store = Data.readDataToStore(sourcePath, parallelism);
+        stats.end();
+
+        // step 按Hilbert曲线重新排列，聚簇个数与点的顺序无关
+        stats.begin("reorder");
+        store = store.reorder(Data.spatialOrder(store, parallelism));
+        stats.end();
+
+        stats.begin("optics");
+        OPTICS optics = new OPTICS(maxRadius, minPoints);
+        optics.run(store, FlatKDTree.buildKDTree(store), stats.getSearchStats());
+        stats.end();
+
+        stats.begin("extract");
+        int[] clusters = new int[radii.length];
+        int[] labels = new int[store.size()];
+        for (int i = 0; i < radii.length; i++) {
+            clusters[i] = optics.extractDBSCAN(radii[i], labels);
+            logger.info(" radius " + radii[i] + ": " + clusters[i] + " clusters");
+        }
+        stats.end();
+        logger.info(" Sweep Statistics:\r\n" + stats);
+        return clusters;
     }
 }
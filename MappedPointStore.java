@@ -0,0 +1,62 @@
+import java.nio.DoubleBuffer;
+import java.util.BitSet;
+
+/**
+ * 坐标直接来自内存映射的二进制文件的PointStore（见Data.mapBinary）
+ * <p>
+ * x、y、weight三列是映射文件上的DoubleBuffer视图，读取时不复制到堆中；
+ * 只有聚类结果（clusterID、核心点及访问标记）分配在堆上。坐标只读，不能添加点。
+ */
+public class MappedPointStore extends PointStore {
+    private final DoubleBuffer x;
+    private final DoubleBuffer y;
+    private final DoubleBuffer weight;
+    private final double minX, maxX, minY, maxY;
+
+    MappedPointStore(DoubleBuffer x, DoubleBuffer y, DoubleBuffer weight, double minX, double maxX, double minY, double maxY) {
+        super(new int[x.limit()], new BitSet(x.limit()), new BitSet(x.limit()));
+        this.x = x;
+        this.y = y;
+        this.weight = weight;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    @Override
+    public int add(double x, double y, double weight) {
+        throw new UnsupportedOperationException("mapped point store is read-only");
+    }
+
+    @Override
+    public double getX(int i) {
+        return x.get(i);
+    }
+
+    @Override
+    public double getY(int i) {
+        return y.get(i);
+    }
+
+    @Override
+    public double getWeight(int i) {
+        return weight.get(i);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+}
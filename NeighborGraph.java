@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * 以压缩稀疏行（CSR）形式保存的eps近邻图
+ * <p>
+ * 第i个点的近邻（不含自身）为neighbors[offsets[i], offsets[i + 1])，每条边只占一个int，
+ * 没有每个点的ArrayList和对象引用。近邻图只需用空间索引构建一次，可以写入文件并以内存映射方式打开。
+ * <p>
+ * 近邻图本身实现了SpatialIndex：半径等于构建时的eps时，范围查询直接返回对应的行，不做任何距离计算，
+ * 因此用不同的minPoints重新聚类（DBSCAN.findStoreCores + processStoreUnionFind）只是对图的遍历。
+ */
+public class NeighborGraph implements SpatialIndex {
+
+    // 文件格式：文件头 + offsets(n + 1个int) + neighbors(edges个int)，均为小端
+    // 文件头：魔数(int) 版本(int) 点数(long) 边数(long) eps(double)，共32字节
+    private static final int GRAPH_MAGIC = 0x44424E47;
+    private static final int GRAPH_VERSION = 1;
+    private static final int GRAPH_HEADER_SIZE = 32;
+
+    private final double eps;
+    private final int size;
+    private final IntBuffer offsets;
+    private final IntBuffer neighbors;
+
+    private NeighborGraph(double eps, IntBuffer offsets, IntBuffer neighbors) {
+        this.eps = eps;
+        this.size = offsets.limit() - 1;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+
+    /**
+     * 用空间索引构建近邻图
+     *
+     * @param index 近邻索引，图中的下标即为索引中的下标
+     * @param eps   距离阈值
+     * @return 近邻图
+     */
+    public static NeighborGraph buildGraph(SpatialIndex index, double eps) {
+        return buildGraph(index, eps, null);
+    }
+
+
+    /**
+     * 用空间索引构建近邻图，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public static NeighborGraph buildGraph(SpatialIndex index, double eps, SearchStats stats) {
+        int n = index.size();
+        int[] offsets = new int[n + 1];
+        IntList neighbors = new IntList(Math.max(n, 16));
+        for (int i = 0; i < n; i++) {
+            index.searchRange(i, eps, neighbors, stats);
+            offsets[i + 1] = neighbors.size();
+        }
+        return new NeighborGraph(eps, IntBuffer.wrap(offsets), IntBuffer.wrap(neighbors.toArray()));
+    }
+
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public double getEps() {
+        return eps;
+    }
+
+    /**
+     * @return 边数（每对近邻计两次）
+     */
+    public long getEdgeCount() {
+        return offsets.get(size);
+    }
+
+    /**
+     * @return 第i个点的近邻数，不含自身
+     */
+    public int degree(int i) {
+        return offsets.get(i + 1) - offsets.get(i);
+    }
+
+    /**
+     * @return 第i个点的第k个近邻
+     */
+    public int neighbor(int i, int k) {
+        return neighbors.get(offsets.get(i) + k);
+    }
+
+
+    @Override
+    public void searchRange(int i, double minDis, IntList result, SearchStats stats) {
+        checkRadius(minDis);
+        if (stats != null)
+            stats.countQuery();
+        for (int k = offsets.get(i), end = offsets.get(i + 1); k < end; k++)
+            result.add(neighbors.get(k));
+    }
+
+
+    /**
+     * 直接遍历对应的行，不经过缓冲区
+     */
+    @Override
+    public void forEachInRange(int i, double minDis, IntConsumer action, SearchStats stats) {
+        checkRadius(minDis);
+        if (stats != null)
+            stats.countQuery();
+        for (int k = offsets.get(i), end = offsets.get(i + 1); k < end; k++)
+            action.accept(neighbors.get(k));
+    }
+
+
+    @Override
+    public int countRange(int i, double minDis, int limit, SearchStats stats) {
+        checkRadius(minDis);
+        if (limit <= 0)
+            return 0;
+        if (stats != null)
+            stats.countQuery();
+        return Math.min(degree(i), limit);
+    }
+
+
+    /**
+     * 近邻图只保存了eps范围内的近邻，不能回答其他半径的查询
+     */
+    private void checkRadius(double minDis) {
+        if (Double.compare(minDis, eps) != 0)
+            throw new IllegalArgumentException("graph was built for eps " + eps + ", queried with " + minDis);
+    }
+
+
+    /**
+     * 将近邻图写为二进制文件
+     *
+     * @param destPath 目标文件
+     */
+    public void writeGraph(String destPath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(destPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(GRAPH_MAGIC).putInt(GRAPH_VERSION).putLong(size).putLong(getEdgeCount()).putDouble(eps);
+            for (int i = 0; i <= size; i++) {
+                if (buffer.remaining() < Integer.BYTES)
+                    flush(channel, buffer);
+                buffer.putInt(offsets.get(i));
+            }
+            for (int k = 0; k < offsets.get(size); k++) {
+                if (buffer.remaining() < Integer.BYTES)
+                    flush(channel, buffer);
+                buffer.putInt(neighbors.get(k));
+            }
+            flush(channel, buffer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    /**
+     * 以内存映射方式打开近邻图文件，offsets和neighbors不复制到堆中
+     *
+     * @param sourcePath 由writeGraph生成的文件
+     * @return 近邻图，文件无效时为null
+     */
+    public static NeighborGraph mapGraph(String sourcePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, GRAPH_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != GRAPH_MAGIC || header.getInt(4) != GRAPH_VERSION)
+                throw new IOException("not a neighbor graph file: " + sourcePath);
+            long n = header.getLong(8), edges = header.getLong(16);
+            long offsetBytes = (n + 1) * Integer.BYTES, neighborBytes = edges * Integer.BYTES;
+            // 单次映射不能超过2GB
+            if (offsetBytes > Integer.MAX_VALUE || neighborBytes > Integer.MAX_VALUE)
+                throw new IOException("graph is too large to map: " + n + " points, " + edges + " edges");
+            if (channel.size() < GRAPH_HEADER_SIZE + offsetBytes + neighborBytes)
+                throw new IOException("truncated neighbor graph file: " + sourcePath);
+
+            IntBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, GRAPH_HEADER_SIZE, offsetBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            IntBuffer neighbors = channel.map(FileChannel.MapMode.READ_ONLY, GRAPH_HEADER_SIZE + offsetBytes, neighborBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            return new NeighborGraph(header.getDouble(24), offsets, neighbors);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
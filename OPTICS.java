@@ -0,0 +1,226 @@
+import java.util.Arrays;
+
+/**
+ * OPTICS聚类（Ankerst et al. 1999）
+ * <p>
+ * 以最大半径radius计算一次簇排序（ordering）及每个点的可达距离和核心距离，
+ * 之后对任意不超过radius的半径都可以在线性时间内提取DBSCAN聚类结果，调参时无需重复聚类。
+ * 核心距离为第minPoints近的近邻（不含自身，与DBSCAN中核心点的定义一致）的距离，近邻不足minPoints个时为无穷大；
+ * 点o相对于p的可达距离为max(p的核心距离, p到o的距离)，每个点的可达距离取其被处理前的最小值，排序中的起点为无穷大。
+ * 种子表为以下标为元素、以可达距离为键的IndexedHeap，键相同时先处理下标小的点，结果只取决于点的下标。
+ * <p>
+ * 另外为每个点记录所有核心点（不论处理先后）对它的最小可达距离及对应的核心点，
+ * 提取时据此判断边界点，边界点的判定与DBSCAN完全相同。
+ */
+class OPTICS {
+    public static final double UNDEFINED = Double.POSITIVE_INFINITY;
+
+    private final double radius;
+    private final int minPoints;
+    private final DistanceKernel kernel;
+
+    // 簇排序：第k个处理的点
+    private int[] order;
+    // 按点下标
+    private double[] reachability;
+    private double[] coreDistance;
+    // 所有核心点p中max(p的核心距离, p到该点的距离)的最小值及对应的p
+    private double[] borderReach;
+    private int[] borderCore;
+
+    OPTICS(double radius, int minPoints) {
+        this(radius, minPoints, DistanceKernel.WEIGHTED);
+    }
+
+    /**
+     * @param radius    最大半径，提取时的半径不能超过此值
+     * @param minPoints 核心点的近邻数下限
+     * @param kernel    距离，须与构建索引时使用的相同
+     */
+    OPTICS(double radius, int minPoints, DistanceKernel kernel) {
+        if (minPoints < 1)
+            throw new IllegalArgumentException("minPoints must be positive: " + minPoints);
+        this.radius = radius;
+        this.minPoints = minPoints;
+        this.kernel = kernel;
+    }
+
+
+    /**
+     * 计算簇排序、可达距离和核心距离
+     *
+     * @param store 所有点
+     * @param index 由store以相同距离构建的近邻索引
+     */
+    public void run(PointStore store, SpatialIndex index) {
+        run(store, index, null);
+    }
+
+
+    /**
+     * 计算簇排序、可达距离和核心距离，同时统计近邻查询
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public void run(PointStore store, SpatialIndex index, SearchStats stats) {
+        int n = store.size();
+        order = new int[n];
+        reachability = new double[n];
+        coreDistance = new double[n];
+        borderReach = new double[n];
+        borderCore = new int[n];
+        Arrays.fill(reachability, UNDEFINED);
+        Arrays.fill(borderReach, UNDEFINED);
+        boolean[] processed = new boolean[n];
+        IndexedHeap seeds = new IndexedHeap(n);
+        IntList neighbors = new IntList();
+        double[] distances = new double[16], sorted = new double[16];
+
+        int k = 0;
+        for (int start = 0; start < n; start++) {
+            if (processed[start])
+                continue;
+            seeds.insertOrDecrease(start, UNDEFINED);
+            // step 依次处理种子表中可达距离最小的点
+            while (!seeds.isEmpty()) {
+                int p = seeds.poll();
+                processed[p] = true;
+                order[k++] = p;
+
+                neighbors.clear();
+                index.searchRange(p, radius, neighbors, stats);
+                if (distances.length < neighbors.size()) {
+                    distances = new double[Math.max(neighbors.size(), distances.length << 1)];
+                    sorted = new double[distances.length];
+                }
+                for (int j = 0; j < neighbors.size(); j++)
+                    distances[j] = distance(store, p, neighbors.get(j));
+                System.arraycopy(distances, 0, sorted, 0, neighbors.size());
+                coreDistance[p] = coreDistance(sorted, neighbors.size());
+                if (coreDistance[p] == UNDEFINED)
+                    continue;
+
+                // step 更新未处理近邻的可达距离
+                for (int j = 0; j < neighbors.size(); j++) {
+                    int o = neighbors.get(j);
+                    double reach = Math.max(coreDistance[p], distances[j]);
+                    if (reach < borderReach[o]) {
+                        borderReach[o] = reach;
+                        borderCore[o] = p;
+                    }
+                    if (processed[o])
+                        continue;
+                    if (reach < reachability[o]) {
+                        reachability[o] = reach;
+                        seeds.insertOrDecrease(o, reach);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @param distances 近邻距离，会被排序
+     * @return 第minPoints小的距离，不足minPoints个时为UNDEFINED
+     */
+    private double coreDistance(double[] distances, int count) {
+        if (count < minPoints)
+            return UNDEFINED;
+        Arrays.sort(distances, 0, count);
+        return distances[minPoints - 1];
+    }
+
+
+    private double distance(PointStore store, int i, int j) {
+        if (store.getDimensions() == 2)
+            return kernel.distance(store.getX(i), store.getY(i), store.getWeight(i), store.getX(j), store.getY(j), store.getWeight(j));
+        // 多维时由距离核从坐标差的平方和得到距离，与索引中withinSquared的判断一致（见DistanceKernel.maxDimensions）
+        double d2 = 0;
+        for (int d = 0; d < store.getDimensions(); d++) {
+            double dd = store.getCoord(i, d) - store.getCoord(j, d);
+            d2 += dd * dd;
+        }
+        return kernel.distance(d2, store.getWeight(i), store.getWeight(j));
+    }
+
+
+    /**
+     * 按簇排序提取半径为eps的DBSCAN聚类结果，只需两次线性扫描：
+     * 先按ExtractDBSCAN-Clustering为核心点编号，可达距离超过eps的核心点开始一个新聚簇，否则属于当前聚簇；
+     * 再为非核心点确定归属：存在核心距离和距离都不超过eps的核心点时为该核心点所在聚簇的边界点，否则为噪声。
+     * 核心点、聚簇及边界点的判定与半径为eps的DBSCAN相同（边界点同时邻近多个聚簇时的归属可能不同）
+     *
+     * @param eps   半径，不超过radius
+     * @param store 与run时相同的点集合，写入clusterID及核心点标记
+     * @return 聚簇个数
+     */
+    public int extractDBSCAN(double eps, PointStore store) {
+        int[] labels = new int[store.size()];
+        int clusters = extractDBSCAN(eps, labels);
+        for (int i = 0; i < labels.length; i++) {
+            boolean core = coreDistance[i] <= eps;
+            store.setClusterID(i, labels[i]);
+            store.setCore(i, core);
+            store.setVisited(i, core);
+        }
+        return clusters;
+    }
+
+
+    /**
+     * 按簇排序提取半径为eps的DBSCAN聚类结果
+     *
+     * @param eps    半径，不超过radius
+     * @param labels 输出每个点的聚簇ID，0为噪声
+     * @return 聚簇个数
+     */
+    public int extractDBSCAN(double eps, int[] labels) {
+        if (order == null)
+            throw new IllegalStateException("run must be called first");
+        if (eps > radius)
+            throw new IllegalArgumentException("eps " + eps + " exceeds radius " + radius);
+        int clusterID = 0;
+        for (int p : order) {
+            if (coreDistance[p] > eps)
+                continue;
+            if (reachability[p] > eps)
+                clusterID++;
+            labels[p] = clusterID;
+        }
+        for (int i = 0; i < labels.length; i++)
+            if (coreDistance[i] > eps)
+                labels[i] = borderReach[i] <= eps ? labels[borderCore[i]] : 0;
+        return clusterID;
+    }
+
+
+    /**
+     * @return 簇排序，第k个元素为第k个处理的点的下标
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * @return 点i的可达距离，排序中每段的起点为UNDEFINED
+     */
+    public double getReachability(int i) {
+        return reachability[i];
+    }
+
+    /**
+     * @return 点i的核心距离，近邻不足minPoints个时为UNDEFINED
+     */
+    public double getCoreDistance(int i) {
+        return coreDistance[i];
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getMinPoints() {
+        return minPoints;
+    }
+}
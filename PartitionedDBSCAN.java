@@ -0,0 +1,632 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 按空间分块、由多个工作进程完成的DBSCAN，用于单个JVM放不下的数据
+ * <p>
+ * 协调进程只流式读取输入文件，不保存任何按点计的数组，中间结果都以按全局下标升序的文件保存在工作目录中：
+ * 1. 抽样，与TreeNode.buildKDTree相同地在方差最大的轴（TreeNode.findMaxAxis）上按中位数递归切分，得到若干矩形分块；
+ * 2. 一次扫描将每个点写入所属分块的文件，同时作为边缘区的点写入与它距离不超过radius的其他分块；
+ * 3. cores轮：每个工作进程为分块自身的点判断核心点，分块加边缘区包含了这些点的全部近邻，结果是准确的；
+ * 4. 协调进程按所属分块的核心点文件为每个分块写出其中所有点（含边缘区）的核心点标记；
+ * 5. cluster轮：每个工作进程用准确的核心点标记在分块内形成局部聚簇，写出自身各点的标签、自身核心点及边缘区核心点的标签；
+ * 6. 同一个核心点在不同分块中的局部聚簇属于同一个全局聚簇：将每个分块的边缘区核心点与所属分块的核心点标签按下标归并，
+ * 用以(分块, 局部聚簇)为元素的并查集合并；
+ * 7. 按输入顺序扫描，从所属分块的标签文件中依次取出各点的局部聚簇，映射为全局聚簇ID后写出。
+ * <p>
+ * 两个互为近邻的核心点中至少有一个所属的分块同时包含二者，且二者在该分块中都被标记为核心点，
+ * 因此它们一定在同一个局部聚簇中，合并后的结果与单机聚类相同（边界点同时邻近多个聚簇时的归属可能不同）。
+ * 边缘区按欧氏距离划分，只支持二维带权欧氏距离（权重非负）。
+ * <p>
+ * 设置堆内存预算（setHeapBudget）后按点数自动确定分块数，使每个分块（含边缘区）的计算不超过预算；
+ * 配合setInProcess即为单机的外存聚类：所有分块在本进程内逐个处理，峰值堆内存与总点数无关。
+ * <p>
+ * 协调进程与工作进程之间通过工作目录中的文件交换数据。默认在本机启动java子进程，
+ * 多节点运行时可以为工作进程指定其他启动命令（例如ssh到其他节点），工作目录需位于共享文件系统上。
+ * 每个分块同时打开一个文件，分块数不能超过进程可打开的文件数。
+ * <p>
+ * 用法：java PartitionedDBSCAN 输入文件 输出文件 radius minPoints 分块数 工作目录 [并发进程数，0为本进程内] [堆内存预算(MB)]
+ */
+public class PartitionedDBSCAN {
+
+    // 分块文件中每个点：全局下标(long) x y weight(double) 所属分块(int)
+    static final int RECORD_SIZE = 8 + 8 * 3 + 4;
+    // 工作进程中每个点（含边缘区）大约占用的堆内存：坐标、FlatKDTree的副本、聚类结果及并查集
+    private static final long BYTES_PER_POINT = 192;
+    // 分块（含边缘区）超出堆内存预算时最多重新切分的次数
+    private static final int MAX_RESPLITS = 4;
+    // 用于切分的抽样点数
+    private static final int SAMPLE_SIZE = 1 << 16;
+    // 流式读取输入文件时每段的字节数
+    private static final long CHUNK_BYTES = 1 << 24;
+    // 同时打开的文件较多，每个文件使用较小的缓冲区
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    private final double radius;
+    private final int minPoints;
+    private final int tiles;
+    private final File workDir;
+    private int workers = 1;
+    private boolean inProcess = false;
+    private long heapBudget = 0;
+    private List<List<String>> commands;
+
+    // 切分树及各分块的矩形范围（[min, max)，最外侧的分块延伸到无穷远）
+    private Split root;
+    private double[][] bounds;
+
+
+    /**
+     * 切分树的节点，叶子对应一个分块
+     */
+    private static class Split {
+        int axis;
+        double value;
+        Split left, right;
+        int tile = -1;
+    }
+
+
+    /**
+     * @param radius    距离阈值
+     * @param minPoints 核心点的近邻数下限
+     * @param tiles     分块数，设置堆内存预算时为最少分块数
+     * @param workDir   存放分块文件和工作进程输出的目录
+     */
+    public PartitionedDBSCAN(double radius, int minPoints, int tiles, File workDir) {
+        if (tiles < 1)
+            throw new IllegalArgumentException("tiles must be positive: " + tiles);
+        this.radius = radius;
+        this.minPoints = minPoints;
+        this.tiles = tiles;
+        this.workDir = workDir;
+    }
+
+
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.out.println("usage: java PartitionedDBSCAN <source> <dest> <radius> <minPoints> <tiles> <workDir> [workers] [heapBudgetMB]");
+            return;
+        }
+        PartitionedDBSCAN partitioned = new PartitionedDBSCAN(Double.parseDouble(args[2]), Integer.parseInt(args[3]),
+                Integer.parseInt(args[4]), new File(args[5]));
+        // 并发进程数为0时在本进程内逐个处理分块
+        if (args.length > 6 && Integer.parseInt(args[6]) == 0)
+            partitioned.setInProcess(true);
+        else if (args.length > 6)
+            partitioned.setWorkers(Integer.parseInt(args[6]));
+        if (args.length > 7)
+            partitioned.setHeapBudget(Long.parseLong(args[7]) << 20);
+        int clusters = partitioned.run(args[0], args[1]);
+        System.out.println(">>> " + clusters + " clusters");
+    }
+
+
+    /**
+     * 同一个JVM的java命令和classpath，加载了向量模块时同样为子进程加载，设置了堆内存预算时作为子进程的最大堆
+     */
+    private List<String> defaultCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (heapBudget > 0)
+            command.add("-Xmx" + Math.max(heapBudget >> 20, 16) + "m");
+        if (BlockKernel.VECTORIZED) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        return command;
+    }
+
+
+    /**
+     * @param workers 同时运行的工作进程数
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        this.workers = workers;
+    }
+
+
+    /**
+     * 在本进程内依次执行工作进程的计算，不启动子进程
+     */
+    public void setInProcess(boolean inProcess) {
+        this.inProcess = inProcess;
+    }
+
+
+    /**
+     * 每个分块计算时可以使用的堆内存，分块数取使每个分块不超过预算的最小值（不少于构造时给出的分块数）。
+     * 预算按分块加边缘区的点数检查，超出时增加分块数重新切分；边缘区本身超出预算时run在启动工作进程前失败
+     *
+     * @param bytes 字节数，0表示不限制
+     */
+    public void setHeapBudget(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("heap budget must not be negative: " + bytes);
+        this.heapBudget = bytes;
+    }
+
+
+    /**
+     * 指定启动工作进程的命令，命令之后追加DBSCANWorker及其参数；第t个分块使用第t % size个命令。
+     * 例如[ssh, node1, java, -cp, /opt/dbscan]，工作目录需在所有节点上以相同路径可见
+     *
+     * @param commands 启动命令
+     */
+    public void setWorkerCommands(List<List<String>> commands) {
+        if (commands.isEmpty())
+            throw new IllegalArgumentException("no worker commands");
+        this.commands = commands;
+    }
+
+
+    /**
+     * @return 上一次run使用的分块数
+     */
+    public int getTileCount() {
+        return bounds == null ? 0 : bounds.length;
+    }
+
+
+    /**
+     * 执行分区聚类
+     *
+     * @param sourcePath x,y,weight格式的文本文件
+     * @param destPath   输出文件，格式与Data.writeStoreData相同，顺序与输入一致
+     * @return 聚簇个数
+     */
+    public int run(String sourcePath, String destPath) {
+        try {
+            if (!workDir.isDirectory() && !workDir.mkdirs())
+                throw new IOException("can not create " + workDir);
+
+            // step 抽样并切分
+            ArrayList<TreeNode> sample = new ArrayList<>();
+            long size = sample(sourcePath, sample);
+            int count = tiles;
+            if (heapBudget > 0)
+                count = (int) Math.max(count, Math.min((size * BYTES_PER_POINT + heapBudget - 1) / heapBudget, Integer.MAX_VALUE));
+            // step 写出分块文件；工作进程载入的是分块加边缘区，超出预算时按超出比例增加分块数重新切分
+            for (int round = 0; ; round++) {
+                ArrayList<double[]> parts = new ArrayList<>();
+                root = split(sample, new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}, count, parts);
+                bounds = parts.toArray(new double[0][]);
+                distribute(sourcePath);
+                if (heapBudget <= 0)
+                    break;
+                int largest = 0;
+                for (int t = 0; t < bounds.length; t++)
+                    largest = Math.max(largest, tileSize(file(t, "tile")));
+                long need = largest * BYTES_PER_POINT;
+                if (need <= heapBudget)
+                    break;
+                // 边缘区宽度不随分块变小，分块过多时边缘区本身就会超出预算，此时在启动工作进程前失败
+                if (round == MAX_RESPLITS || bounds.length < count)
+                    throw new IOException("tile with " + largest + " points (including halo) needs about " + (need >> 20)
+                            + " MB, exceeding heap budget of " + (heapBudget >> 20) + " MB with " + bounds.length + " tiles");
+                count = (int) Math.min((long) Math.ceil((double) count * need / heapBudget) + 1, Integer.MAX_VALUE);
+            }
+            sample.clear();
+
+            // step cores轮，为每个分块写出核心点标记
+            runWorkers("cores");
+            for (int t = 0; t < bounds.length; t++)
+                writeFlags(t);
+
+            // step cluster轮，合并局部聚簇
+            runWorkers("cluster");
+            int[] offset = new int[bounds.length + 1];
+            for (int t = 0; t < bounds.length; t++) {
+                try (DataInputStream is = new DataInputStream(new FileInputStream(file(t, "labels")))) {
+                    offset[t + 1] = Math.addExact(offset[t], is.readInt());
+                }
+            }
+            DisjointSet set = new DisjointSet(offset[bounds.length] + 1);
+            for (int t = 0; t < bounds.length; t++)
+                merge(t, offset, set);
+
+            // step 按输入顺序写出结果
+            return writeResult(sourcePath, destPath, offset, set);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+
+    /**
+     * 统计点数，同时蓄水池抽样
+     *
+     * @return 点数
+     */
+    private long sample(String sourcePath, ArrayList<TreeNode> sample) throws IOException {
+        // 固定种子，同一输入的分块相同
+        Random rd = new Random(0);
+        long[] seen = {0};
+        forEachChunk(sourcePath, (chunk, first) -> {
+            for (int i = 0; i < chunk.size(); i++, seen[0]++) {
+                long k = seen[0] < SAMPLE_SIZE ? seen[0] : (long) (rd.nextDouble() * (seen[0] + 1));
+                if (k >= SAMPLE_SIZE)
+                    continue;
+                TreeNode node = new TreeNode(new Point(chunk.getX(i), chunk.getY(i), chunk.getWeight(i)));
+                if (k == sample.size())
+                    sample.add(node);
+                else
+                    sample.set((int) k, node);
+            }
+        });
+        return seen[0];
+    }
+
+
+    /**
+     * 在方差最大的轴上按分块数的比例切分样本，直到每部分只对应一个分块
+     *
+     * @param sample 落在当前矩形中的样本
+     * @param box    当前矩形 minX maxX minY maxY
+     * @param count  当前矩形需要划分成的分块数
+     * @param result 所有分块的矩形
+     * @return 切分树
+     */
+    private static Split split(ArrayList<TreeNode> sample, double[] box, int count, ArrayList<double[]> result) {
+        Split node = new Split();
+        if (count == 1 || sample.size() < 2) {
+            node.tile = result.size();
+            result.add(box);
+            return node;
+        }
+        node.axis = TreeNode.findMaxAxis(sample) == TreeNode.getCoorX() ? 0 : 1;
+        sample.sort(Comparator.comparingDouble(n -> node.axis == 0 ? n.getData().getX() : n.getData().getY()));
+        int leftCount = count / 2;
+        int m = (int) ((long) sample.size() * leftCount / count);
+        node.value = node.axis == 0 ? sample.get(m).getData().getX() : sample.get(m).getData().getY();
+
+        double[] left = box.clone(), right = box.clone();
+        left[2 * node.axis + 1] = node.value;
+        right[2 * node.axis] = node.value;
+        node.left = split(new ArrayList<>(sample.subList(0, m)), left, leftCount, result);
+        node.right = split(new ArrayList<>(sample.subList(m, sample.size())), right, count - leftCount, result);
+        return node;
+    }
+
+
+    /**
+     * @return 点所属的分块
+     */
+    private int owner(double x, double y) {
+        Split node = root;
+        while (node.tile < 0)
+            node = (node.axis == 0 ? x : y) < node.value ? node.left : node.right;
+        return node.tile;
+    }
+
+
+    /**
+     * 找到与点的距离不超过radius的所有分块（包括所属分块）
+     */
+    private void nearTiles(Split node, double x, double y, IntList result) {
+        if (node.tile >= 0) {
+            double[] b = bounds[node.tile];
+            double dx = Math.max(Math.max(b[0] - x, x - b[1]), 0);
+            double dy = Math.max(Math.max(b[2] - y, y - b[3]), 0);
+            if (dx * dx + dy * dy <= radius * radius)
+                result.add(node.tile);
+            return;
+        }
+        double v = node.axis == 0 ? x : y;
+        if (v - radius < node.value)
+            nearTiles(node.left, x, y, result);
+        if (v + radius >= node.value)
+            nearTiles(node.right, x, y, result);
+    }
+
+
+    /**
+     * 一次扫描将每个点写入所属分块，以及与它的距离不超过radius的其他分块（作为边缘区）
+     */
+    private void distribute(String sourcePath) throws IOException {
+        DataOutputStream[] outs = new DataOutputStream[bounds.length];
+        try {
+            for (int t = 0; t < bounds.length; t++)
+                outs[t] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(t, "tile")), BUFFER_SIZE));
+            IntList near = new IntList();
+            forEachChunk(sourcePath, (chunk, first) -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    double x = chunk.getX(i), y = chunk.getY(i);
+                    int owner = owner(x, y);
+                    near.clear();
+                    nearTiles(root, x, y, near);
+                    for (int k = 0; k < near.size(); k++) {
+                        DataOutputStream os = outs[near.get(k)];
+                        os.writeLong(first + i);
+                        os.writeDouble(x);
+                        os.writeDouble(y);
+                        os.writeDouble(chunk.getWeight(i));
+                        os.writeInt(owner);
+                    }
+                }
+            });
+        } finally {
+            for (DataOutputStream os : outs)
+                if (os != null)
+                    os.close();
+        }
+    }
+
+
+    /**
+     * @return 分块文件中的点数
+     */
+    static int tileSize(File tile) {
+        long n = tile.length() / RECORD_SIZE;
+        if (n > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("too many points in " + tile + ", use more tiles");
+        return (int) n;
+    }
+
+
+    /**
+     * 读取分块文件
+     *
+     * @param tile   分块文件
+     * @param global 输出每个点的全局下标，长度为tileSize(tile)
+     * @param owner  输出每个点所属的分块，长度为tileSize(tile)
+     * @return 分块中的点，下标与文件中的顺序一致
+     */
+    static PointStore readTile(File tile, long[] global, int[] owner) throws IOException {
+        int n = global.length;
+        PointStore store = new PointStore(n);
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(tile), 1 << 16))) {
+            for (int i = 0; i < n; i++) {
+                global[i] = is.readLong();
+                store.add(is.readDouble(), is.readDouble(), is.readDouble());
+                owner[i] = is.readInt();
+            }
+        }
+        return store;
+    }
+
+
+    /**
+     * 为分块中的每个点（含边缘区）写出核心点标记：分块文件与各所属分块的核心点文件都按全局下标升序，依次归并
+     */
+    private void writeFlags(int t) throws IOException {
+        Map<Integer, Cursor> cores = new HashMap<>();
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file(t, "tile")), 1 << 16));
+             DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(t, "flags")), 1 << 16))) {
+            for (int n = tileSize(file(t, "tile")); n > 0; n--) {
+                long g = is.readLong();
+                is.skipBytes(8 * 3);
+                int owner = is.readInt();
+                Cursor cursor = cores.get(owner);
+                if (cursor == null) {
+                    cursor = new Cursor(file(owner, "cores"), false);
+                    cores.put(owner, cursor);
+                }
+                os.writeBoolean(cursor.seek(g));
+            }
+        } finally {
+            for (Cursor cursor : cores.values())
+                cursor.close();
+        }
+    }
+
+
+    /**
+     * 将分块边缘区的每个核心点与其所属分块中的同一个核心点合并：
+     * 第t个分块的局部聚簇c对应并查集中的offset[t] + c
+     */
+    private void merge(int t, int[] offset, DisjointSet set) throws IOException {
+        Map<Integer, Cursor> owners = new HashMap<>();
+        File halo = file(t, "halo");
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(halo), 1 << 16))) {
+            for (long n = halo.length() / 16; n > 0; n--) {
+                long g = is.readLong();
+                int owner = is.readInt();
+                int local = is.readInt();
+                Cursor cursor = owners.get(owner);
+                if (cursor == null) {
+                    cursor = new Cursor(file(owner, "corelabels"), true);
+                    owners.put(owner, cursor);
+                }
+                if (!cursor.seek(g))
+                    throw new IOException("core point " + g + " is missing in tile " + owner);
+                set.union(offset[t] + local, offset[owner] + cursor.value);
+            }
+        } finally {
+            for (Cursor cursor : owners.values())
+                cursor.close();
+        }
+    }
+
+
+    /**
+     * 按输入顺序写出结果，各点的局部聚簇依次从所属分块的标签文件中读取，全局聚簇按首次出现的顺序编号
+     *
+     * @return 聚簇个数
+     */
+    private int writeResult(String sourcePath, String destPath, int[] offset, DisjointSet set) throws IOException {
+        DataInputStream[] labels = new DataInputStream[bounds.length];
+        int[] rootLabel = new int[set.size()];
+        int[] clusterID = {0};
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(destPath))) {
+            for (int t = 0; t < bounds.length; t++) {
+                labels[t] = new DataInputStream(new BufferedInputStream(new FileInputStream(file(t, "labels")), BUFFER_SIZE));
+                labels[t].readInt();
+            }
+            forEachChunk(sourcePath, (chunk, first) -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    int t = owner(chunk.getX(i), chunk.getY(i));
+                    int local = labels[t].readInt();
+                    boolean core = labels[t].readBoolean();
+                    int id = 0;
+                    if (local != 0) {
+                        int r = set.find(offset[t] + local);
+                        if (rootLabel[r] == 0)
+                            rootLabel[r] = ++clusterID[0];
+                        id = rootLabel[r];
+                    }
+                    chunk.setClusterID(i, id);
+                    chunk.setCore(i, core);
+                    chunk.setVisited(i, core);
+                    bw.write(chunk.toString(i) + "\r\n");
+                }
+            });
+        } finally {
+            for (DataInputStream is : labels)
+                if (is != null)
+                    is.close();
+        }
+        return clusterID[0];
+    }
+
+
+    /**
+     * 按全局下标升序读取核心点文件（每条为long下标，可选跟随一个int值）
+     */
+    private static class Cursor implements Closeable {
+        private final DataInputStream is;
+        private final boolean withValue;
+        private long remaining;
+        long key = -1;
+        int value;
+
+        Cursor(File file, boolean withValue) throws IOException {
+            this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            this.withValue = withValue;
+            this.remaining = file.length() / (withValue ? 12 : 8);
+        }
+
+        /**
+         * 前进到第一个不小于g的下标
+         *
+         * @return 文件中是否有下标g
+         */
+        boolean seek(long g) throws IOException {
+            while (key < g && remaining > 0) {
+                key = is.readLong();
+                if (withValue)
+                    value = is.readInt();
+                remaining--;
+            }
+            return key == g;
+        }
+
+        @Override
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+
+
+    /**
+     * 启动所有分块的工作进程并等待完成，同时运行的进程数不超过workers；在本进程内运行时逐个处理
+     *
+     * @param mode cores或cluster
+     */
+    private void runWorkers(String mode) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(inProcess ? 1 : workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < bounds.length; t++) {
+                int tile = t;
+                futures.add(pool.submit(() -> {
+                    runWorker(tile, mode);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for workers", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    private void runWorker(int t, String mode) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>();
+        args.add(mode);
+        args.add(Integer.toString(t));
+        args.add(file(t, "tile").getPath());
+        if (mode.equals("cores")) {
+            args.add(file(t, "cores").getPath());
+        } else {
+            args.add(file(t, "flags").getPath());
+            args.add(file(t, "labels").getPath());
+            args.add(file(t, "corelabels").getPath());
+            args.add(file(t, "halo").getPath());
+        }
+        args.add(Double.toString(radius));
+        args.add(Integer.toString(minPoints));
+        if (inProcess) {
+            DBSCANWorker.run(args.toArray(new String[0]));
+            return;
+        }
+
+        List<String> command = new ArrayList<>(commands == null ? defaultCommand() : commands.get(t % commands.size()));
+        command.add("DBSCANWorker");
+        command.addAll(args);
+        File log = file(t, mode + ".log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+        int exit = process.waitFor();
+        if (exit != 0)
+            throw new IOException("worker for tile " + t + " exited with " + exit + ", see " + log);
+    }
+
+
+    private File file(int t, String suffix) {
+        return new File(workDir, "tile-" + t + "." + suffix);
+    }
+
+
+    /**
+     * 依次处理输入文件中的各段
+     */
+    private interface ChunkVisitor {
+        /**
+         * @param chunk 这一段中的点
+         * @param first 第一个点的全局下标
+         */
+        void visit(PointStore chunk, long first) throws IOException;
+    }
+
+
+    /**
+     * 按CHUNK_BYTES分段流式解析输入文件，内存中只保留一段
+     */
+    private static void forEachChunk(String sourcePath, ChunkVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(sourcePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long first = 0;
+            for (long start = 0; start < size; start += CHUNK_BYTES) {
+                PointStore chunk = new PointStore(1024);
+                PointParser.parse(channel, start, Math.min(start + CHUNK_BYTES, size), chunk);
+                visitor.visit(chunk, first);
+                first += chunk.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * x,y,weight文本格式的解析器；store为d维时每行为d个坐标加权重
+ * <p>
+ * 按大块读取文件字节，直接在字节数组上查找逗号和换行并解析数值，
+ * 不使用String.split，也不为每个字段创建String；只有遇到科学计数法、超过15位有效数字等少见写法时
+ * 才退回到Double.parseDouble。
+ */
+class PointParser {
+
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    // 可精确表示的10的幂，mantissa不超过15位时一次除法即可得到正确舍入的结果
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+
+    /**
+     * 解析文件中起始位置位于[start, end)的所有行，追加到store中
+     * 多个线程可以用同一个FileChannel解析互不重叠的区间，拼接后的结果与整体解析相同
+     *
+     * @param channel 文件
+     * @param start   区间起始字节（包含）
+     * @param end     区间结束字节（不包含）
+     * @param store   解析结果
+     */
+    static void parse(FileChannel channel, long start, long end, PointStore store) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // 多维坐标的解析缓冲，二维时不使用
+        double[] point = store.getDimensions() == 2 ? null : new double[store.getDimensions()];
+        // 从start的前一个字节开始读，跳过第一个换行符之前的内容（属于上一个区间的行）
+        long base = start > 0 ? start - 1 : 0;
+        boolean skipFirst = start > 0;
+        boolean eof = false;
+        int pos = 0;
+
+        while (true) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.position();
+            int eol = pos;
+            while (eol < limit && bytes[eol] != '\n')
+                eol++;
+
+            if (eol == limit && !eof) {
+                // 当前缓冲区中没有完整的行，将剩余字节移到开头后继续读取
+                if (base + pos >= end && !skipFirst)
+                    return;
+                System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+                base += pos;
+                buffer.position(limit - pos);
+                pos = 0;
+                if (!buffer.hasRemaining()) {
+                    // 单行长度超过缓冲区
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() << 1);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                if (channel.read(buffer, base + buffer.position()) < 0)
+                    eof = true;
+                continue;
+            }
+
+            if (eol == limit && pos == limit)
+                return;
+            if (skipFirst) {
+                skipFirst = false;
+            } else {
+                if (base + pos >= end)
+                    return;
+                if (point == null)
+                    parseLine(bytes, pos, eol, store);
+                else
+                    parseLine(bytes, pos, eol, store, point);
+            }
+            pos = eol + 1;
+            if (eol == limit)
+                return;
+        }
+    }
+
+
+    /**
+     * 解析一行 x,y,weight，忽略空行及第三个字段之后的内容
+     */
+    private static void parseLine(byte[] bytes, int from, int to, PointStore store) {
+        if (to > from && bytes[to - 1] == '\r')
+            to--;
+        int start = from;
+        while (start < to && bytes[start] <= ' ')
+            start++;
+        if (start == to)
+            return;
+
+        int c1 = indexOf(bytes, ',', from, to);
+        int c2 = c1 < 0 ? -1 : indexOf(bytes, ',', c1 + 1, to);
+        if (c2 < 0)
+            throw new NumberFormatException("expected x,y,weight: " + new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        int c3 = indexOf(bytes, ',', c2 + 1, to);
+        double x = parseDouble(bytes, from, c1);
+        double y = parseDouble(bytes, c1 + 1, c2);
+        double weight = parseDouble(bytes, c2 + 1, c3 < 0 ? to : c3);
+        store.add(x, y, weight);
+    }
+
+
+    /**
+     * 解析一行 c0,c1,...,c(d-1),weight，忽略空行及第d + 1个字段之后的内容
+     */
+    private static void parseLine(byte[] bytes, int from, int to, PointStore store, double[] point) {
+        if (to > from && bytes[to - 1] == '\r')
+            to--;
+        int start = from;
+        while (start < to && bytes[start] <= ' ')
+            start++;
+        if (start == to)
+            return;
+
+        int field = from;
+        for (int d = 0; d < point.length; d++) {
+            int comma = indexOf(bytes, ',', field, to);
+            if (comma < 0)
+                throw new NumberFormatException("expected " + point.length + " coordinates and weight: " + new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+            point[d] = parseDouble(bytes, field, comma);
+            field = comma + 1;
+        }
+        int end = indexOf(bytes, ',', field, to);
+        store.add(point, parseDouble(bytes, field, end < 0 ? to : end));
+    }
+
+
+    private static int indexOf(byte[] bytes, char c, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (bytes[i] == c)
+                return i;
+        return -1;
+    }
+
+
+    /**
+     * 解析[from, to)中的十进制小数，两端空白被忽略
+     */
+    static double parseDouble(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] <= ' ')
+            from++;
+        while (to > from && bytes[to - 1] <= ' ')
+            to--;
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+'))
+            negative = bytes[i++] == '-';
+
+        long mantissa = 0;
+        int significant = 0, fraction = 0;
+        boolean dot = false, digit = false;
+        for (; i < to; i++) {
+            byte c = bytes[i];
+            if (c >= '0' && c <= '9') {
+                digit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0 && ++significant > 15)
+                    return fallback(bytes, from, to);
+                if (dot)
+                    fraction++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return fallback(bytes, from, to);
+            }
+        }
+        if (!digit || fraction >= POW10.length)
+            return fallback(bytes, from, to);
+
+        double value = fraction == 0 ? mantissa : mantissa / POW10[fraction];
+        return negative ? -value : value;
+    }
+
+
+    private static double fallback(byte[] bytes, int from, int to) {
+        return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+}
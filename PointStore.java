@@ -0,0 +1,321 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 列式存储的点集合
+ * <p>
+ * 与ArrayList<Point>保存相同的信息，但每个字段存放在一个基本类型数组中，
+ * 没有每个点的对象头和近邻集合引用；点由下标[0, size)标识。
+ * clusterID初始为0，分类后值为聚簇ID。
+ * <p>
+ * 坐标可以有d >= 2维，每一维一列；第0、1维即X、Y，getX/getY直接读取这两列，二维数据的用法不变。
+ * 与Point、TreeNode之间的转换只支持二维。
+ */
+public class PointStore {
+    private final int dimensions;
+    // coords[d]为第d维坐标列，x、y为coords[0]、coords[1]
+    private double[][] coords;
+    private double[] x;
+    private double[] y;
+    private double[] weight;
+    private int[] clusterID;
+    private final BitSet core;
+    private final BitSet visited;
+    private int size;
+
+    PointStore(int capacity) {
+        this(capacity, 2);
+    }
+
+    /**
+     * @param capacity   初始容量
+     * @param dimensions 坐标维数，至少为2
+     */
+    PointStore(int capacity, int dimensions) {
+        if (dimensions < 2)
+            throw new IllegalArgumentException("dimensions must be at least 2: " + dimensions);
+        capacity = Math.max(capacity, 1);
+        this.dimensions = dimensions;
+        this.coords = new double[dimensions][capacity];
+        this.x = coords[0];
+        this.y = coords[1];
+        this.weight = new double[capacity];
+        this.clusterID = new int[capacity];
+        this.core = new BitSet(capacity);
+        this.visited = new BitSet(capacity);
+        this.size = 0;
+    }
+
+    /**
+     * 坐标列由子类提供（见MappedPointStore）：基类只保存给定的聚类结果，coords、x、y、weight均为null，
+     * 子类必须覆盖getX、getY、getWeight，并覆盖add使其不可添加点。点数为clusterID的长度，只支持二维
+     *
+     * @param clusterID 每个点的聚类结果，长度即点数
+     * @param core      核心点标记
+     * @param visited   访问标记
+     */
+    PointStore(int[] clusterID, BitSet core, BitSet visited) {
+        this.dimensions = 2;
+        this.size = clusterID.length;
+        this.clusterID = clusterID;
+        this.core = core;
+        this.visited = visited;
+    }
+
+    /**
+     * 直接使用给定数组（不复制）
+     */
+    PointStore(double[] x, double[] y, double[] weight) {
+        if (x.length != y.length || x.length != weight.length)
+            throw new IllegalArgumentException("columns have different lengths");
+        this.dimensions = 2;
+        this.coords = new double[][]{x, y};
+        this.x = x;
+        this.y = y;
+        this.weight = weight;
+        this.size = x.length;
+        this.clusterID = new int[size];
+        this.core = new BitSet(size);
+        this.visited = new BitSet(size);
+    }
+
+
+    /**
+     * 由Point集合得到PointStore，下标与集合中的顺序一致
+     *
+     * @param points Point集合
+     * @return PointStore
+     */
+    public static PointStore fromPoints(ArrayList<Point> points) {
+        PointStore store = new PointStore(points.size());
+        for (Point p : points) {
+            int i = store.add(p.getX(), p.getY(), p.getWeight());
+            store.clusterID[i] = p.getClusterID();
+            store.core.set(i, p.isCore());
+            store.visited.set(i, p.isVisited());
+        }
+        return store;
+    }
+
+
+    /**
+     * 将聚类结果写回对应的Point集合
+     *
+     * @param points 与fromPoints时顺序相同的Point集合
+     */
+    public void copyTo(ArrayList<Point> points) {
+        for (int i = 0; i < size; i++) {
+            Point p = points.get(i);
+            p.setClusterID(clusterID[i]);
+            p.setCore(core.get(i));
+            p.setVisited(visited.get(i));
+        }
+    }
+
+
+    /**
+     * 为每个点创建新的Point对象，包含当前的聚类结果
+     *
+     * @return Point集合，顺序与下标一致
+     */
+    public ArrayList<Point> toPoints() {
+        checkPlanar();
+        ArrayList<Point> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Point p = new Point(getX(i), getY(i), getWeight(i));
+            p.setClusterID(clusterID[i]);
+            p.setCore(core.get(i));
+            p.setVisited(visited.get(i));
+            points.add(p);
+        }
+        return points;
+    }
+
+
+    /**
+     * 按给定顺序重新排列得到新的PointStore，包含当前的聚类结果
+     *
+     * @param order order[k]为新PointStore中第k个点在当前PointStore中的下标，见Data.spatialOrder
+     * @return 重新排列后的PointStore
+     */
+    public PointStore reorder(int[] order) {
+        PointStore result = new PointStore(order.length, dimensions);
+        for (int d = 0; d < dimensions; d++) {
+            double[] column = result.coords[d];
+            for (int k = 0; k < order.length; k++)
+                column[k] = getCoord(order[k], d);
+        }
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            result.weight[k] = getWeight(i);
+            result.clusterID[k] = clusterID[i];
+            result.core.set(k, core.get(i));
+            result.visited.set(k, visited.get(i));
+        }
+        result.size = order.length;
+        return result;
+    }
+
+
+    /**
+     * 将另一个PointStore的点追加到末尾（不包含聚类结果）
+     *
+     * @param other 另一个PointStore
+     */
+    public void addAll(PointStore other) {
+        if (other.dimensions != dimensions)
+            throw new IllegalArgumentException("dimensions differ: " + other.dimensions + " != " + dimensions);
+        if (dimensions == 2) {
+            for (int i = 0; i < other.size; i++)
+                add(other.getX(i), other.getY(i), other.getWeight(i));
+            return;
+        }
+        double[] point = new double[dimensions];
+        for (int i = 0; i < other.size; i++) {
+            for (int d = 0; d < dimensions; d++)
+                point[d] = other.getCoord(i, d);
+            add(point, other.getWeight(i));
+        }
+    }
+
+
+    /**
+     * 添加一个二维点
+     *
+     * @return 新点的下标
+     */
+    public int add(double x, double y, double weight) {
+        checkPlanar();
+        if (size == this.x.length)
+            grow();
+        this.x[size] = x;
+        this.y[size] = y;
+        this.weight[size] = weight;
+        return size++;
+    }
+
+
+    /**
+     * 添加一个点
+     *
+     * @param point  各维坐标，长度为维数
+     * @param weight 权重
+     * @return 新点的下标
+     */
+    public int add(double[] point, double weight) {
+        if (point.length != dimensions)
+            throw new IllegalArgumentException("expected " + dimensions + " coordinates, got " + point.length);
+        if (dimensions == 2)
+            return add(point[0], point[1], weight);
+        if (size == this.x.length)
+            grow();
+        for (int d = 0; d < dimensions; d++)
+            coords[d][size] = point[d];
+        this.weight[size] = weight;
+        return size++;
+    }
+
+
+    private void grow() {
+        int capacity = this.x.length << 1;
+        for (int d = 0; d < dimensions; d++)
+            coords[d] = Arrays.copyOf(coords[d], capacity);
+        this.x = coords[0];
+        this.y = coords[1];
+        this.weight = Arrays.copyOf(this.weight, capacity);
+        this.clusterID = Arrays.copyOf(this.clusterID, capacity);
+    }
+
+
+    private void checkPlanar() {
+        if (dimensions != 2)
+            throw new UnsupportedOperationException("only supported for 2-dimensional points, this store has " + dimensions);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return 第i个点的第d维坐标
+     */
+    public double getCoord(int i, int d) {
+        return d == 0 ? getX(i) : d == 1 ? getY(i) : coords[d][i];
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getWeight(int i) {
+        return weight[i];
+    }
+
+    public int getClusterID(int i) {
+        return clusterID[i];
+    }
+
+    public void setClusterID(int i, int clusterID) {
+        this.clusterID[i] = clusterID;
+    }
+
+    public boolean isCore(int i) {
+        return core.get(i);
+    }
+
+    public void setCore(int i, boolean isCore) {
+        core.set(i, isCore);
+    }
+
+    public boolean isVisited(int i) {
+        return visited.get(i);
+    }
+
+    public void setVisited(int i, boolean isVisited) {
+        visited.set(i, isVisited);
+    }
+
+    /**
+     * 清除聚类结果，以便使用其他参数重新聚类
+     */
+    public void reset() {
+        Arrays.fill(clusterID, 0);
+        core.clear();
+        visited.clear();
+    }
+
+    /**
+     * 与Point.getDistance相同的带权距离，多维时为各维坐标差的欧氏距离加两点权重
+     */
+    public double getDistance(int i, int j) {
+        double dx = getX(i) - getX(j);
+        double dy = getY(i) - getY(j);
+        double d2 = dx * dx + dy * dy;
+        for (int d = 2; d < dimensions; d++) {
+            double dd = coords[d][i] - coords[d][j];
+            d2 += dd * dd;
+        }
+        return Math.sqrt(d2) + getWeight(i) + getWeight(j);
+    }
+
+    /**
+     * 与Point.toString格式相同，第2维起依次为Z、D3、D4...
+     */
+    public String toString(int i) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("X:").append(getX(i)).append(" Y:").append(getY(i));
+        for (int d = 2; d < dimensions; d++)
+            sb.append(d == 2 ? " Z:" : " D" + d + ":").append(coords[d][i]);
+        return sb.append(" W:").append(getWeight(i)).append(" C:").append(clusterID[i])
+                .append(isCore(i) ? " c" : " n").append(isVisited(i) ? " v" : " u").toString();
+    }
+}
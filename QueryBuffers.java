@@ -0,0 +1,86 @@
+import java.util.Arrays;
+
+/**
+ * 每个线程复用的查询缓冲区
+ * <p>
+ * 近邻查询本身不应分配对象：结果写入调用者提供的IntList，或者逐个传给基本类型的回调；
+ * 查询内部需要的临时空间（回调前暂存结果的IntList、多维查询点坐标、searchKNN回溯用的显式栈）从这里取得，
+ * 每个线程只在第一次使用或需要更大空间时分配，之后的查询不再分配。
+ * 回调中可以再次查询：IntList按嵌套深度各用一个，互不覆盖。
+ */
+final class QueryBuffers {
+
+    private static final ThreadLocal<QueryBuffers> LOCAL = ThreadLocal.withInitial(QueryBuffers::new);
+
+    // 按嵌套深度复用的结果缓冲
+    private IntList[] lists = new IntList[4];
+    private int depth;
+
+    // 多维查询点坐标
+    private double[] point = new double[3];
+
+    // searchKNN的回溯栈：每一帧为一棵子树的根、当前回溯到的节点、该子树中叶子与目标点的距离，以及是否已检查兄弟子树
+    TreeNode[] frameRoot = new TreeNode[32];
+    TreeNode[] frameNode = new TreeNode[32];
+    double[] frameDistance = new double[32];
+    boolean[] frameChecked = new boolean[32];
+
+    private QueryBuffers() {
+    }
+
+
+    /**
+     * @return 当前线程的缓冲区
+     */
+    static QueryBuffers get() {
+        return LOCAL.get();
+    }
+
+
+    /**
+     * 取得一个清空的IntList，用完后须调用release
+     */
+    IntList acquire() {
+        if (depth == lists.length)
+            lists = Arrays.copyOf(lists, depth << 1);
+        IntList list = lists[depth];
+        if (list == null)
+            list = lists[depth] = new IntList();
+        depth++;
+        list.clear();
+        return list;
+    }
+
+
+    /**
+     * 归还最近一次acquire得到的IntList
+     */
+    void release() {
+        depth--;
+    }
+
+
+    /**
+     * @param dimensions 维数
+     * @return 长度为dimensions的坐标缓冲（BlockKernel以数组长度为维数），内容未定义
+     */
+    double[] point(int dimensions) {
+        if (point.length != dimensions)
+            point = new double[dimensions];
+        return point;
+    }
+
+
+    /**
+     * 保证回溯栈至少能容纳size帧
+     */
+    void ensureFrames(int size) {
+        if (size <= frameRoot.length)
+            return;
+        int capacity = Math.max(size, frameRoot.length << 1);
+        frameRoot = Arrays.copyOf(frameRoot, capacity);
+        frameNode = Arrays.copyOf(frameNode, capacity);
+        frameDistance = Arrays.copyOf(frameDistance, capacity);
+        frameChecked = Arrays.copyOf(frameChecked, capacity);
+    }
+}
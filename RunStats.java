@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+
+/**
+ * 一次聚类运行的统计：各阶段（读取、建树、找核心点、扩张、写出）的耗时及结束时的堆内存占用，
+ * 以及近邻查询的计数器
+ */
+public class RunStats {
+
+    public static class Phase {
+        private final String name;
+        private final long nanos;
+        private final long heapUsed;
+
+        Phase(String name, long nanos, long heapUsed) {
+            this.name = name;
+            this.nanos = nanos;
+            this.heapUsed = heapUsed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return 阶段结束时的堆内存占用（字节）
+         */
+        public long getHeapUsed() {
+            return heapUsed;
+        }
+
+        public String toString() {
+            return name + " " + String.format("%.1f", nanos / 1e6) + "ms heap:" + heapUsed / 1048576 + "MB";
+        }
+    }
+
+    private final ArrayList<Phase> phases = new ArrayList<>();
+    private final SearchStats search = new SearchStats();
+    private String current;
+    private long start;
+
+
+    /**
+     * 开始一个阶段，未结束的上一阶段会先被结束
+     *
+     * @param name 阶段名称
+     */
+    public void begin(String name) {
+        if (current != null)
+            end();
+        current = name;
+        start = System.nanoTime();
+    }
+
+
+    /**
+     * 结束当前阶段，记录耗时和堆内存占用
+     */
+    public void end() {
+        if (current == null)
+            return;
+        long nanos = System.nanoTime() - start;
+        Runtime runtime = Runtime.getRuntime();
+        phases.add(new Phase(current, nanos, runtime.totalMemory() - runtime.freeMemory()));
+        current = null;
+    }
+
+    public ArrayList<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * @return 名称为name的阶段的总耗时（纳秒）
+     */
+    public long getNanos(String name) {
+        long nanos = 0;
+        for (Phase phase : phases)
+            if (phase.name.equals(name))
+                nanos += phase.nanos;
+        return nanos;
+    }
+
+    public SearchStats getSearchStats() {
+        return search;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : phases)
+            sb.append(phase).append("\r\n");
+        sb.append(search);
+        return sb.toString();
+    }
+}
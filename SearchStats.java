@@ -0,0 +1,112 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 近邻查询的计数器：距离计算次数、访问节点数、被剪枝的子树数
+ * <p>
+ * 只做普通的long自增，开销可以忽略；非线程安全，每个线程使用各自的实例，最后用merge汇总。
+ * 多线程的聚类方法内部通过PerThread为每个线程分配实例，结束后汇总到调用者传入的实例。
+ * 所有查询方法的stats参数都可以为null，表示不统计。
+ */
+public class SearchStats {
+    private long queries;
+    private long distanceComputations;
+    private long nodesVisited;
+    private long subtreesPruned;
+
+    public void countQuery() {
+        queries++;
+    }
+
+    public void countDistance() {
+        distanceComputations++;
+    }
+
+    public void countDistances(int n) {
+        distanceComputations += n;
+    }
+
+    public void countVisit() {
+        nodesVisited++;
+    }
+
+    public void countPruned() {
+        subtreesPruned++;
+    }
+
+    /**
+     * 将另一个计数器的值累加到当前计数器
+     */
+    public void merge(SearchStats other) {
+        queries += other.queries;
+        distanceComputations += other.distanceComputations;
+        nodesVisited += other.nodesVisited;
+        subtreesPruned += other.subtreesPruned;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    public long getSubtreesPruned() {
+        return subtreesPruned;
+    }
+
+    /**
+     * @return 遇到的子树中被剪枝而未进入的比例
+     */
+    public double getPruningRatio() {
+        long total = nodesVisited + subtreesPruned;
+        return total == 0 ? 0 : (double) subtreesPruned / total;
+    }
+
+    public String toString() {
+        double q = Math.max(queries, 1);
+        return "queries:" + queries + " distances:" + distanceComputations + " (" + String.format("%.1f", distanceComputations / q) + "/query)"
+                + " visited:" + nodesVisited + " (" + String.format("%.1f", nodesVisited / q) + "/query)"
+                + " pruned:" + subtreesPruned + " ratio:" + String.format("%.3f", getPruningRatio());
+    }
+
+
+    /**
+     * 多线程查询时每个线程各自的计数器，所有查询结束后调用merge汇总到target
+     * target为null时get也返回null，即不统计
+     */
+    static final class PerThread {
+        private final SearchStats target;
+        private final ConcurrentLinkedQueue<SearchStats> all = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<SearchStats> local = ThreadLocal.withInitial(() -> {
+            SearchStats stats = new SearchStats();
+            all.add(stats);
+            return stats;
+        });
+
+        PerThread(SearchStats target) {
+            this.target = target;
+        }
+
+        /**
+         * @return 当前线程的计数器，target为null时返回null
+         */
+        SearchStats get() {
+            return target == null ? null : local.get();
+        }
+
+        /**
+         * 将各线程的计数累加到target，须在所有线程结束后调用
+         */
+        void merge() {
+            if (target == null)
+                return;
+            for (SearchStats stats : all)
+                target.merge(stats);
+        }
+    }
+}
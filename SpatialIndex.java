@@ -0,0 +1,73 @@
+import java.util.function.IntConsumer;
+
+/**
+ * 近邻查询索引
+ * 点由其在PointStore中的下标标识，查询结果均不含查询点本身
+ */
+public interface SpatialIndex {
+
+    /**
+     * @return 索引中的点数
+     */
+    int size();
+
+
+    /**
+     * 半径范围查询，结果追加到result中
+     *
+     * @param i      查询点下标
+     * @param minDis 距离阈值
+     * @param result 范围内点的下标
+     * @param stats  查询计数器，可为null
+     */
+    void searchRange(int i, double minDis, IntList result, SearchStats stats);
+
+
+    /**
+     * 半径范围计数，计数达到limit时立即停止
+     *
+     * @param i      查询点下标
+     * @param minDis 距离阈值
+     * @param limit  计数上限，通常为minPoints
+     * @param stats  查询计数器，可为null
+     * @return 范围内点数，最大为limit
+     */
+    int countRange(int i, double minDis, int limit, SearchStats stats);
+
+
+    default void searchRange(int i, double minDis, IntList result) {
+        searchRange(i, minDis, result, null);
+    }
+
+
+    default int countRange(int i, double minDis, int limit) {
+        return countRange(i, minDis, limit, null);
+    }
+
+
+    /**
+     * 半径范围查询，范围内的点逐个传给action，不创建结果集合
+     * 默认实现先查询到当前线程复用的IntList（见QueryBuffers）再逐个回调，action中可以再次查询
+     *
+     * @param i      查询点下标
+     * @param minDis 距离阈值
+     * @param action 接收范围内点的下标
+     * @param stats  查询计数器，可为null
+     */
+    default void forEachInRange(int i, double minDis, IntConsumer action, SearchStats stats) {
+        QueryBuffers buffers = QueryBuffers.get();
+        IntList result = buffers.acquire();
+        try {
+            searchRange(i, minDis, result, stats);
+            for (int k = 0; k < result.size(); k++)
+                action.accept(result.get(k));
+        } finally {
+            buffers.release();
+        }
+    }
+
+
+    default void forEachInRange(int i, double minDis, IntConsumer action) {
+        forEachInRange(i, minDis, action, null);
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * 保持空间局部性的点顺序
+ * <p>
+ * 输入文件通常按设备或时间排列，空间上相邻的点在数组中相距很远，近邻查询和聚簇扩张都要随机访问内存。
+ * 这里为每个点计算空间填充曲线上的位置：二维为Hilbert曲线（每维16位），多维为Morton码（Z-order，每维32/d位），
+ * 再以基数排序按位置排序，曲线上相邻的点在空间中也相邻。
+ * 键为32位无符号整数，LSD基数排序每趟处理8位，共4趟；每趟先并行统计各段的直方图，再并行分配，
+ * 各段写入位置由直方图的前缀和确定，排序稳定，键相同的点保持原有顺序。
+ */
+final class SpatialOrder {
+
+    // 二维时每维的位数
+    private static final int HILBERT_BITS = 16;
+    private static final int KEY_BITS = 32;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    // 小于此规模时不并行
+    private static final int PARALLEL_CUTOFF = 1 << 16;
+
+    private SpatialOrder() {
+    }
+
+
+    /**
+     * 计算按空间填充曲线排列的顺序
+     *
+     * @param store       所有点
+     * @param parallelism 线程数
+     * @return order[k]为排序后第k个点在store中的下标
+     */
+    static int[] order(PointStore store, int parallelism) {
+        int n = store.size();
+        int chunks = n < PARALLEL_CUTOFF || parallelism <= 1 ? 1 : parallelism * 4;
+        ForkJoinPool pool = chunks > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            int[] keys = keys(store, chunks, pool);
+            return sortByKey(keys, chunks, pool);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
+
+    /**
+     * 将坐标量化到[0, 2^bits)的网格后计算曲线上的位置
+     */
+    private static int[] keys(PointStore store, int chunks, ForkJoinPool pool) {
+        int n = store.size();
+        int dimensions = store.getDimensions();
+        // 每维的位数，超过32维时只用前32维
+        int used = Math.min(dimensions, KEY_BITS);
+        int bits = dimensions == 2 ? HILBERT_BITS : KEY_BITS / used;
+        double[] min = new double[used];
+        double[] scale = new double[used];
+        for (int d = 0; d < used; d++) {
+            double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double v = store.getCoord(i, d);
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            min[d] = lo;
+            scale[d] = hi > lo ? ((1 << bits) - 1) / (hi - lo) : 0;
+        }
+
+        int[] keys = new int[n];
+        parallel(chunks, pool, c -> {
+            int[] cell = new int[used];
+            for (int i = begin(n, c, chunks), end = begin(n, c + 1, chunks); i < end; i++) {
+                for (int d = 0; d < used; d++)
+                    cell[d] = (int) ((store.getCoord(i, d) - min[d]) * scale[d]);
+                keys[i] = used == 2 ? hilbert(cell[0], cell[1], bits) : morton(cell, bits);
+            }
+        });
+        return keys;
+    }
+
+
+    /**
+     * 点(x, y)在2^bits * 2^bits网格的Hilbert曲线上的位置
+     * 按位从高到低，每一层确定所在象限后将坐标旋转到该象限的方向；结果按无符号整数解释
+     */
+    static int hilbert(int x, int y, int bits) {
+        int side = 1 << bits;
+        int d = 0;
+        for (int s = side >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+
+    /**
+     * 各维坐标按位交错得到的Morton码，高位在前
+     */
+    static int morton(int[] cell, int bits) {
+        int key = 0;
+        for (int b = bits - 1; b >= 0; b--)
+            for (int value : cell)
+                key = key << 1 | (value >>> b & 1);
+        return key;
+    }
+
+
+    /**
+     * 按无符号键稳定排序
+     *
+     * @param keys 每个点的键，排序过程中被覆盖
+     * @return order[k]为第k小的键对应的下标
+     */
+    private static int[] sortByKey(int[] keys, int chunks, ForkJoinPool pool) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        int[] keyBuffer = new int[n], orderBuffer = new int[n];
+        int[][] counts = new int[chunks][RADIX];
+
+        for (int shift = 0; shift < KEY_BITS; shift += RADIX_BITS) {
+            // step 各段的直方图
+            int[] src = keys, srcOrder = order;
+            int sh = shift;
+            parallel(chunks, pool, c -> {
+                int[] count = counts[c];
+                Arrays.fill(count, 0);
+                for (int i = begin(n, c, chunks), end = begin(n, c + 1, chunks); i < end; i++)
+                    count[src[i] >>> sh & (RADIX - 1)]++;
+            });
+
+            // step 前缀和：桶b中第c段的起始位置；所有键在这一趟落入同一个桶时跳过
+            int position = 0;
+            boolean skip = false;
+            for (int b = 0; b < RADIX; b++) {
+                int total = 0;
+                for (int c = 0; c < chunks; c++) {
+                    int count = counts[c][b];
+                    counts[c][b] = position;
+                    position += count;
+                    total += count;
+                }
+                if (total == n)
+                    skip = true;
+            }
+            if (skip)
+                continue;
+
+            // step 各段并行分配
+            int[] dst = keyBuffer, dstOrder = orderBuffer;
+            parallel(chunks, pool, c -> {
+                int[] next = counts[c];
+                for (int i = begin(n, c, chunks), end = begin(n, c + 1, chunks); i < end; i++) {
+                    int pos = next[src[i] >>> sh & (RADIX - 1)]++;
+                    dst[pos] = src[i];
+                    dstOrder[pos] = srcOrder[i];
+                }
+            });
+            keyBuffer = keys;
+            orderBuffer = order;
+            keys = dst;
+            order = dstOrder;
+        }
+        return order;
+    }
+
+
+    /**
+     * @return 第c段的起始下标
+     */
+    private static int begin(int n, int c, int chunks) {
+        return (int) ((long) n * c / chunks);
+    }
+
+
+    private static void parallel(int chunks, ForkJoinPool pool, IntConsumer task) {
+        if (chunks == 1) {
+            task.accept(0);
+            return;
+        }
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(task)).join();
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+/**
+ * 滑动时间窗口上的流式聚类
+ * <p>
+ * 输入带时间戳的点，始终维护最近window时间内的点的聚类结果：
+ * 新点先缓存在批中，批满或调用advance时一次性处理——先删除已移出窗口的点，再插入批中仍在窗口内的点
+ * （已过期的点直接丢弃，不进入索引），整批的聚簇变化合并后通过ClusterListener通知，
+ * 而不是每次重新输出所有点。内存只与窗口内的点数和批大小有关。
+ * <p>
+ * 时间戳可以乱序到达，过期按时间戳顺序进行（最小堆）。聚类由IncrementalDBSCAN完成。非线程安全。
+ */
+public class StreamingDBSCAN {
+
+    private final IncrementalDBSCAN engine;
+    private final long window;
+    private final int batchSize;
+
+    // 待处理的批
+    private long[] pendingTime;
+    private double[] pendingX, pendingY, pendingWeight;
+    private int pendingSize;
+    // 当前时间：见过的最大时间戳
+    private long now = Long.MIN_VALUE;
+
+    // 窗口内的点按时间戳组成的最小堆
+    private long[] heapTime;
+    private int[] heapId;
+    private int heapSize;
+
+    /**
+     * @param radius    距离阈值
+     * @param minPoints 核心点的近邻数下限
+     * @param window    窗口长度，与时间戳单位相同
+     * @param batchSize 批大小，缓存的点数达到此值时自动处理
+     * @param listener  聚簇变化的监听器，可为null
+     */
+    public StreamingDBSCAN(double radius, int minPoints, long window, int batchSize, ClusterListener listener) {
+        if (window <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("window and batchSize must be positive");
+        this.engine = new IncrementalDBSCAN(radius, minPoints);
+        this.engine.setListener(listener);
+        this.window = window;
+        this.batchSize = batchSize;
+        this.pendingTime = new long[batchSize];
+        this.pendingX = new double[batchSize];
+        this.pendingY = new double[batchSize];
+        this.pendingWeight = new double[batchSize];
+        this.heapTime = new long[16];
+        this.heapId = new int[16];
+    }
+
+
+    /**
+     * 添加一个点，批满时自动处理
+     *
+     * @param time 时间戳
+     */
+    public void add(long time, double x, double y, double weight) {
+        pendingTime[pendingSize] = time;
+        pendingX[pendingSize] = x;
+        pendingY[pendingSize] = y;
+        pendingWeight[pendingSize] = weight;
+        pendingSize++;
+        now = Math.max(now, time);
+        if (pendingSize == batchSize)
+            advance(now);
+    }
+
+
+    /**
+     * 将时间推进到time（不会后退），处理缓存的批并删除时间戳不大于time - window的点
+     *
+     * @param time 当前时间
+     */
+    public void advance(long time) {
+        now = Math.max(now, time);
+        long cutoff = now - window;
+        engine.beginBatch();
+        try {
+            // step 先删除过期的点，插入的点不会再与它们计算近邻
+            while (heapSize > 0 && heapTime[0] <= cutoff)
+                engine.delete(pollId());
+            // step 插入批中仍在窗口内的点
+            for (int k = 0; k < pendingSize; k++)
+                if (pendingTime[k] > cutoff)
+                    push(pendingTime[k], engine.insert(pendingX[k], pendingY[k], pendingWeight[k]));
+            pendingSize = 0;
+        } finally {
+            engine.endBatch();
+        }
+    }
+
+
+    /**
+     * @return 当前时间，即见过的最大时间戳
+     */
+    public long getTime() {
+        return now;
+    }
+
+    /**
+     * @return 窗口内已处理的点数（不含缓存中的点）
+     */
+    public int size() {
+        return engine.size();
+    }
+
+    /**
+     * @return 窗口内点的聚类结果，点编号与ClusterListener通知中的一致
+     */
+    public IncrementalDBSCAN getEngine() {
+        return engine;
+    }
+
+
+    private void push(long time, int id) {
+        if (heapSize == heapTime.length) {
+            heapTime = Arrays.copyOf(heapTime, heapSize << 1);
+            heapId = Arrays.copyOf(heapId, heapSize << 1);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heapTime[p] <= time)
+                break;
+            heapTime[i] = heapTime[p];
+            heapId[i] = heapId[p];
+            i = p;
+        }
+        heapTime[i] = time;
+        heapId[i] = id;
+    }
+
+
+    private int pollId() {
+        int id = heapId[0];
+        long time = heapTime[--heapSize];
+        int last = heapId[heapSize];
+        int i = 0;
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= heapSize)
+                break;
+            if (c + 1 < heapSize && heapTime[c + 1] < heapTime[c])
+                c++;
+            if (heapTime[c] >= time)
+                break;
+            heapTime[i] = heapTime[c];
+            heapId[i] = heapId[c];
+            i = c;
+        }
+        heapTime[i] = time;
+        heapId[i] = last;
+        return id;
+    }
+}
@@ -1,7 +1,7 @@
 
-import org.apache.log4j.Logger;
-
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * 这里K=2，即二叉树
@@ -23,6 +23,8 @@ public class TreeNode implements Comparable<TreeNode> {
 
     private static final int COOR_X = 1;
     private static final int COOR_Y = 2;
+    // 子树节点数超过此值时，左右子树作为fork-join任务并行构建
+    private static final int PARALLEL_BUILD_CUTOFF = 1 << 13;
 
     // KD-Tree节点数据
     private Point data;
@@ -32,6 +34,8 @@ public class TreeNode implements Comparable<TreeNode> {
     private TreeNode left, right, parent;
     // 节点的维度 1是X轴 2是Y轴
     private int dim = -1;
+    // 以该节点为根的子树中的最小权重，用于带权距离的剪枝
+    private double minWeight;
 
     TreeNode(Point data) {
         this.data = data;
@@ -77,6 +81,50 @@ public class TreeNode implements Comparable<TreeNode> {
     }
 
 
+    /**
+     * 由自身权重及左右子树的最小权重得到本子树的最小权重，需在左右子树建好后调用
+     */
+    private void updateMinWeight() {
+        minWeight = data.getWeight();
+        if (left != null)
+            minWeight = Math.min(minWeight, left.minWeight);
+        if (right != null)
+            minWeight = Math.min(minWeight, right.minWeight);
+    }
+
+
+    /**
+     * 目标节点与子树中任意节点距离的下界：分割面距离 + 两点权重（取子树最小权重）
+     *
+     * @param target  目标节点
+     * @param gap     目标节点到分割面的距离
+     * @param subtree 子树根节点
+     * @return 距离下界
+     */
+    private static double lowerBound(TreeNode target, double gap, TreeNode subtree) {
+        return Math.abs(gap) + target.data.getWeight() + subtree.minWeight;
+    }
+
+
+    /**
+     * 按距离核判断目标节点与给定节点的距离是否不超过阈值
+     * factor、threshold为查询开始时由距离核预计算的值（见DistanceKernel.prepareQuery、prepareThreshold）
+     */
+    private static boolean within(DistanceKernel kernel, TreeNode target, TreeNode node, double factor, double threshold) {
+        Point a = target.data, b = node.data;
+        return kernel.withinPrepared(a.getX(), a.getY(), a.getWeight(), factor, b.getX(), b.getY(), b.getWeight(), threshold);
+    }
+
+
+    /**
+     * 按距离核判断：目标节点在dim维上到子树的坐标差为gap时，子树中是否一定没有范围内的节点
+     */
+    private static boolean outside(DistanceKernel kernel, TreeNode target, int dim, double gap, TreeNode subtree, double factor, double threshold) {
+        Point p = target.data;
+        return kernel.axisOutsidePrepared(dim == COOR_X ? 0 : 1, gap, p.getX(), p.getY(), p.getWeight(), factor, subtree.minWeight, threshold);
+    }
+
+
     /**
      * 找到方差最大的轴
      *
@@ -224,10 +272,125 @@ public class TreeNode implements Comparable<TreeNode> {
             root.left.parent = root;
         if (root.right != null)
             root.right.parent = root;
+        root.updateMinWeight();
+        return root;
+    }
+
+
+    /**
+     * 并行构建KD-Tree
+     * 与buildKDTree得到相同结构的树（中位数为根，维度依次循环），但不为每层创建新的ArrayList：
+     * 节点复制到一个数组中，通过迭代式快速选择在下标区间内原地划分，左右子树在节点数较多时作为fork-join任务并行构建。
+     * 与中位数相等的节点可能出现在两侧子树中，范围查询和searchKNN均可正确处理。
+     *
+     * @param nodes TreeNode集合，集合本身的顺序不会被改变
+     * @param deep  分割维度 [1,2]
+     * @return 返回KD-Tree根节点
+     */
+    public static TreeNode buildKDTreeParallel(ArrayList<TreeNode> nodes, int deep) {
+        if (nodes == null || nodes.size() == 0)
+            return null;
+        TreeNode[] array = nodes.toArray(new TreeNode[0]);
+        TreeNode root = ForkJoinPool.commonPool().invoke(new BuildTask(array, 0, array.length, deep));
+        root.parent = null;
+        return root;
+    }
+
+
+    /**
+     * 构建区间[lo, hi)对应的子树
+     */
+    private static class BuildTask extends RecursiveTask<TreeNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeNode[] nodes;
+        private final int lo, hi, deep;
+
+        BuildTask(TreeNode[] nodes, int lo, int hi, int deep) {
+            this.nodes = nodes;
+            this.lo = lo;
+            this.hi = hi;
+            this.deep = deep;
+        }
+
+        @Override
+        protected TreeNode compute() {
+            return buildRange(nodes, lo, hi, deep);
+        }
+    }
+
+
+    /**
+     * 原地构建区间[lo, hi)对应的子树
+     *
+     * @param nodes 节点数组
+     * @param lo    区间左下标（包含）
+     * @param hi    区间右下标（不包含）
+     * @param deep  分割维度 [1,2]
+     * @return 子树根节点
+     */
+    private static TreeNode buildRange(TreeNode[] nodes, int lo, int hi, int deep) {
+        if (lo >= hi)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        selectMedian(nodes, lo, hi - 1, mid, deep);
+        TreeNode root = nodes[mid];
+        root.dim = deep;
+
+        int next = deep + 1 > 2 ? 1 : deep + 1;
+        if (hi - lo > PARALLEL_BUILD_CUTOFF) {
+            BuildTask left = new BuildTask(nodes, lo, mid, next);
+            left.fork();
+            root.right = buildRange(nodes, mid + 1, hi, next);
+            root.left = left.join();
+        } else {
+            root.left = buildRange(nodes, lo, mid, next);
+            root.right = buildRange(nodes, mid + 1, hi, next);
+        }
+
+        if (root.left != null)
+            root.left.parent = root;
+        if (root.right != null)
+            root.right.parent = root;
+        root.updateMinWeight();
         return root;
     }
 
 
+    /**
+     * 迭代式快速选择，使第k个位置上的节点为区间[lo, hi]中第k小的节点，左侧不大于它，右侧不小于它
+     *
+     * @param nodes 节点数组
+     * @param lo    区间左下标（包含）
+     * @param hi    区间右下标（包含）
+     * @param k     目标位置
+     * @param dim   比较维度
+     */
+    private static void selectMedian(TreeNode[] nodes, int lo, int hi, int k, int dim) {
+        while (lo < hi) {
+            double pivot = nodes[(lo + hi) >>> 1].getDimensionData(dim);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (nodes[i].getDimensionData(dim) < pivot)
+                    i++;
+                while (nodes[j].getDimensionData(dim) > pivot)
+                    j--;
+                if (i <= j) {
+                    TreeNode tmp = nodes[i];
+                    nodes[i++] = nodes[j];
+                    nodes[j--] = tmp;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+
     /**
      * 通过快速排序找到数组的中间点，无需对数据进行全排序
      *
@@ -277,59 +440,296 @@ public class TreeNode implements Comparable<TreeNode> {
      * 如果不相交直接返回父节点的父节点，在另一个子树继续搜索最近邻。
      * (4)当回溯到根节点时算法结束，此时保存的最近邻节点就是最终的最近邻。
      * <p>
-     * 这里通过父节点指针回溯；另一篇文章中使用栈辅助回溯
+     * 这里通过父节点指针回溯，兄弟子树的搜索用显式栈代替递归（见searchBrother）
      *
      * @param root   KD-Tree根节点
      * @param cur    当前节点
      * @param k      搜索点数
      * @param dim    首先查找维度
      * @param minDis 给定的距离阈值
+     * @param stats  查询计数器，可为null
      * @return 近邻点组成的ArrayList
      */
-    public static ArrayList<TreeNode> searchKNN(TreeNode root, TreeNode cur, int k, int dim, double minDis, Logger logger) {
+    public static ArrayList<TreeNode> searchKNN(TreeNode root, TreeNode cur, int k, int dim, double minDis, SearchStats stats) {
         ArrayList<TreeNode> knn = new ArrayList<>();
-        searchBrother(root, cur, k, dim, minDis, knn, logger);
+        searchKNN(root, cur, k, dim, minDis, knn, stats);
         return knn;
     }
 
 
+    /**
+     * 近邻搜索，结果写入调用者提供的集合，反复查询时可以复用同一个集合
+     *
+     * @param knn 清空后写入近邻点，按大根堆排列
+     */
+    public static void searchKNN(TreeNode root, TreeNode cur, int k, int dim, double minDis, ArrayList<TreeNode> knn, SearchStats stats) {
+        knn.clear();
+        if (stats != null)
+            stats.countQuery();
+        searchBrother(root, cur, k, dim, minDis, knn, stats);
+    }
+
+
+    /**
+     * 半径范围查询
+     * 与searchKNN不同，不受k个数限制，也不维护大根堆，返回与目标节点距离不超过minDis的所有节点（不含目标节点本身）
+     * <p>
+     * 剪枝依据：Point.getDistance在坐标差之外只会加上非负的权重，因此某一维上的坐标差已大于minDis时，
+     * 分割面另一侧的子树中不可能存在近邻点；使用其他距离核时由DistanceKernel.axisOutside给出剪枝条件
+     *
+     * @param root   KD-Tree根节点
+     * @param target 目标节点
+     * @param minDis 距离阈值
+     * @return 范围内节点组成的ArrayList
+     */
+    public static ArrayList<TreeNode> searchRange(TreeNode root, TreeNode target, double minDis) {
+        return searchRange(root, target, minDis, (SearchStats) null);
+    }
+
+
+    /**
+     * 半径范围查询，同时统计距离计算次数、访问节点数及剪枝子树数
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public static ArrayList<TreeNode> searchRange(TreeNode root, TreeNode target, double minDis, SearchStats stats) {
+        return searchRange(root, target, minDis, DistanceKernel.WEIGHTED, stats);
+    }
+
+
+    /**
+     * 使用指定距离核进行半径范围查询
+     *
+     * @param kernel 距离核
+     * @param stats  查询计数器，可为null
+     */
+    public static ArrayList<TreeNode> searchRange(TreeNode root, TreeNode target, double minDis, DistanceKernel kernel, SearchStats stats) {
+        ArrayList<TreeNode> result = new ArrayList<>();
+        searchRange(root, target, minDis, kernel, result, stats);
+        return result;
+    }
+
+
+    /**
+     * 半径范围查询，结果追加到调用者提供的集合，反复查询时可以复用同一个集合
+     *
+     * @param result 范围内节点追加到此集合
+     * @param stats  查询计数器，可为null
+     */
+    public static void searchRange(TreeNode root, TreeNode target, double minDis, DistanceKernel kernel, ArrayList<TreeNode> result, SearchStats stats) {
+        if (stats != null)
+            stats.countQuery();
+        Point p = target.data;
+        searchSubtree(root, target, kernel.prepareQuery(p.getX(), p.getY()), kernel.prepareThreshold(minDis), kernel, result, stats);
+    }
+
+
+    /**
+     * 半径范围计数，计数达到limit时立即停止遍历
+     * 用于判断核心点时只需知道近邻数是否达到minPoints，无需得到近邻点集合
+     *
+     * @param root   KD-Tree根节点
+     * @param target 目标节点
+     * @param minDis 距离阈值
+     * @param limit  计数上限，通常为minPoints
+     * @return 范围内节点数，最大为limit
+     */
+    public static int countRange(TreeNode root, TreeNode target, double minDis, int limit) {
+        return countRange(root, target, minDis, limit, null);
+    }
+
+
+    /**
+     * 半径范围计数，同时统计距离计算次数、访问节点数及剪枝子树数
+     *
+     * @param stats 查询计数器，可为null
+     */
+    public static int countRange(TreeNode root, TreeNode target, double minDis, int limit, SearchStats stats) {
+        return countRange(root, target, minDis, limit, DistanceKernel.WEIGHTED, stats);
+    }
+
+
+    /**
+     * 使用指定距离核进行半径范围计数
+     *
+     * @param kernel 距离核
+     * @param stats  查询计数器，可为null
+     */
+    public static int countRange(TreeNode root, TreeNode target, double minDis, int limit, DistanceKernel kernel, SearchStats stats) {
+        if (limit <= 0)
+            return 0;
+        if (stats != null)
+            stats.countQuery();
+        Point p = target.data;
+        return countRange(root, target, kernel.prepareQuery(p.getX(), p.getY()), kernel.prepareThreshold(minDis), limit, 0, kernel, stats);
+    }
+
+
+    /**
+     * 递归进行范围查询
+     * left子树坐标不大于分割值，right子树坐标不小于分割值
+     *
+     * @param node      当前子树根节点
+     * @param target    目标节点
+     * @param factor    kernel.prepareQuery(目标节点坐标)
+     * @param threshold kernel.prepareThreshold(minDis)
+     * @param kernel    距离核
+     * @param result    范围内节点集合
+     * @param stats     查询计数器，可为null
+     */
+    private static void searchSubtree(TreeNode node, TreeNode target, double factor, double threshold, DistanceKernel kernel, ArrayList<TreeNode> result, SearchStats stats) {
+        if (node == null)
+            return;
+        if (stats != null)
+            stats.countVisit();
+        if (node != target) {
+            if (stats != null)
+                stats.countDistance();
+            if (within(kernel, target, node, factor, threshold))
+                result.add(node);
+        }
+
+        // left子树坐标不大于分割值，只有目标点在分割面右侧（gap > 0）时才有分割面距离；right子树相反
+        double gap = target.getDimensionData(node.dim) - node.getDimensionData(node.dim);
+        if (node.left != null) {
+            if (!outside(kernel, target, node.dim, Math.max(gap, 0), node.left, factor, threshold))
+                searchSubtree(node.left, target, factor, threshold, kernel, result, stats);
+            else if (stats != null)
+                stats.countPruned();
+        }
+        if (node.right != null) {
+            if (!outside(kernel, target, node.dim, Math.min(gap, 0), node.right, factor, threshold))
+                searchSubtree(node.right, target, factor, threshold, kernel, result, stats);
+            else if (stats != null)
+                stats.countPruned();
+        }
+    }
+
+
+    /**
+     * 递归进行范围计数，优先进入目标节点所在一侧的子树，以便尽早达到limit
+     *
+     * @param node      当前子树根节点
+     * @param target    目标节点
+     * @param factor    kernel.prepareQuery(目标节点坐标)
+     * @param threshold kernel.prepareThreshold(minDis)
+     * @param limit     计数上限
+     * @param count     已计数个数
+     * @param kernel    距离核
+     * @param stats     查询计数器，可为null
+     * @return 累计计数
+     */
+    private static int countRange(TreeNode node, TreeNode target, double factor, double threshold, int limit, int count, DistanceKernel kernel, SearchStats stats) {
+        if (node == null || count >= limit)
+            return count;
+        if (stats != null)
+            stats.countVisit();
+        if (node != target) {
+            if (stats != null)
+                stats.countDistance();
+            if (within(kernel, target, node, factor, threshold) && ++count >= limit)
+                return count;
+        }
+
+        double gap = target.getDimensionData(node.dim) - node.getDimensionData(node.dim);
+        TreeNode near = gap <= 0 ? node.left : node.right;
+        TreeNode far = gap <= 0 ? node.right : node.left;
+        if (near != null) {
+            if (!outside(kernel, target, node.dim, 0, near, factor, threshold))
+                count = countRange(near, target, factor, threshold, limit, count, kernel, stats);
+            else if (stats != null)
+                stats.countPruned();
+        }
+        if (far != null) {
+            if (!outside(kernel, target, node.dim, gap, far, factor, threshold))
+                count = countRange(far, target, factor, threshold, limit, count, kernel, stats);
+            else if (stats != null)
+                stats.countPruned();
+        }
+        return count;
+    }
+
+
     /**
      * 遍历其兄弟节点
+     * 以QueryBuffers中的显式栈代替递归：每一帧对应一次对子树的搜索，记录子树根、当前回溯到的节点及叶子距离，
+     * 检查兄弟子树时压入新帧，回溯到子树根时弹出，访问顺序与递归实现相同
      *
      * @param root   KD-Tree根节点
      * @param target 当前节点
      * @param k      近邻数
      * @param dim    首先查找维度
      * @param knn    返回近邻点集合
+     * @param stats  查询计数器，可为null
+     */
+    private static void searchBrother(TreeNode root, TreeNode target, int k, int dim, double minDis, ArrayList<TreeNode> knn, SearchStats stats) {
+        QueryBuffers buffers = QueryBuffers.get();
+        int top = pushFrame(buffers, 0, root, target, k, dim, minDis, knn, stats);
+        while (top > 0) {
+            int f = top - 1;
+            TreeNode leaf = buffers.frameNode[f];
+            if (!buffers.frameChecked[f]) {
+                // 回溯到子树根，该子树搜索结束
+                if (leaf == buffers.frameRoot[f]) {
+                    buffers.frameRoot[f] = null;
+                    buffers.frameNode[f] = null;
+                    top--;
+                    continue;
+                }
+                buffers.frameChecked[f] = true;
+                TreeNode brother = getBrother(leaf);
+                if (brother != null) {
+                    // 判断与分割面是否相交 或 knn近邻点集合个数少于k；距离下界超过minDis的兄弟子树中不可能有近邻点
+                    double bound = lowerBound(target, target.getDimensionData(leaf.parent.dim) - leaf.parent.getDimensionData(leaf.parent.dim), brother);
+                    if (bound <= minDis && (buffers.frameDistance[f] > bound || knn.size() < k)) {
+                        // 个人认为在查找兄弟节点时应该用兄弟节点的分割方式
+                        top = pushFrame(buffers, top, brother, target, k, brother.dim, minDis, knn, stats);
+                    } else if (stats != null) {
+                        stats.countPruned();
+                    }
+                }
+            } else {
+                // 向上回溯直到到根节点
+                leaf = leaf.parent;
+                buffers.frameNode[f] = leaf;
+                buffers.frameChecked[f] = false;
+                double rootDis = target.computeDistance(leaf);
+                leaf.distance = rootDis;
+                if (stats != null) {
+                    stats.countVisit();
+                    stats.countDistance();
+                }
+
+                if (leaf != target)
+                    maintainMaxHeap(knn, leaf, k, minDis);
+            }
+        }
+    }
+
+
+    /**
+     * 开始搜索子树root：找到包含目标点的叶子节点并压入新帧
+     *
+     * @return 压入后的栈高度
      */
-    private static void searchBrother(TreeNode root, TreeNode target, int k, int dim, double minDis, ArrayList<TreeNode> knn, Logger logger) {
+    private static int pushFrame(QueryBuffers buffers, int top, TreeNode root, TreeNode target, int k, int dim, double minDis, ArrayList<TreeNode> knn, SearchStats stats) {
         // 包含目标点的叶子节点
-        TreeNode leaf = searchLeaf(root, target, dim);
+        TreeNode leaf = searchLeaf(root, target, dim, stats);
         // 最近近邻点与当前查询点距离，即球体半径
         double curDis = target.computeDistance(leaf);
         leaf.distance = curDis;
+        if (stats != null)
+            stats.countDistance();
 
         if (leaf != target)
-            maintainMaxHeap(knn, leaf, k, minDis, logger);
-
-        while (leaf != root) {
-            TreeNode brother = getBrother(leaf);
-            if (brother != null) {
-                // 判断与分割面是否相交 或 knn近邻点集合个数少于k
-                if (curDis > Math.abs(target.getDimensionData(leaf.parent.dim) - leaf.parent.getDimensionData(leaf.parent.dim)) || knn.size() < k) {
-                    // 个人认为在查找兄弟节点时应该用兄弟节点的分割方式
-                    searchBrother(brother, target, k, brother.dim, minDis, knn, logger);
-                }
-            }
-
-            // 向上回溯直到到根节点
-            leaf = leaf.parent;
-            double rootDis = target.computeDistance(leaf);
-            leaf.distance = rootDis;
-
-            if (leaf != target)
-                maintainMaxHeap(knn, leaf, k, minDis, logger);
-        }
+            maintainMaxHeap(knn, leaf, k, minDis);
+
+        buffers.ensureFrames(top + 1);
+        buffers.frameRoot[top] = root;
+        buffers.frameNode[top] = leaf;
+        buffers.frameDistance[top] = curDis;
+        buffers.frameChecked[top] = false;
+        return top + 1;
     }
 
 
@@ -340,21 +740,31 @@ public class TreeNode implements Comparable<TreeNode> {
      * @param root 根节点
      * @param cur  当前节点
      * @param dim  首先查找维度
+     * @param stats 查询计数器，可为null
      * @return 叶子节点
      */
-    private static TreeNode searchLeaf(TreeNode root, TreeNode cur, int dim) {
+    private static TreeNode searchLeaf(TreeNode root, TreeNode cur, int dim, SearchStats stats) {
         TreeNode leaf = root, next;
+        if (stats != null)
+            stats.countVisit();
         while (leaf.left != null || leaf.right != null) {
             // 若root节点值>cur节点值，进入左子树；若大于则进入右子树；否则比较节点间距离，进入距离较小的子树
             if (cur.getDimensionData(dim) < leaf.getDimensionData(dim))
                 next = leaf.left;
             else if (cur.getDimensionData(dim) > leaf.getDimensionData(dim))
                 next = leaf.right;
-            else
+            else {
                 next = cur.computeDistance(leaf.left) < cur.computeDistance(leaf.right) ? leaf.left : leaf.right;
+                if (stats != null) {
+                    stats.countDistance();
+                    stats.countDistance();
+                }
+            }
 
             if (next == null)
                 break;
+            if (stats != null)
+                stats.countVisit();
 
             leaf = next;
 
@@ -370,14 +780,14 @@ public class TreeNode implements Comparable<TreeNode> {
      * @param knn    当前最近点
      * @param minDis 距离阈值 超过此阈值的点舍弃
      */
-    private static void maintainMaxHeap(ArrayList<TreeNode> knn, TreeNode node, int k, double minDis, Logger logger) {
+    private static void maintainMaxHeap(ArrayList<TreeNode> knn, TreeNode node, int k, double minDis) {
         if (node.distance > minDis)
             return;
 
         if (knn.size() < k)
             fixed2Up(knn, node);
         else
-            fixed2Down(knn, node, logger);
+            fixed2Down(knn, node);
     }
 
 
@@ -410,13 +820,10 @@ public class TreeNode implements Comparable<TreeNode> {
      * @param knn  近邻点集合
      * @param node 当前节点
      */
-    private static void fixed2Down(ArrayList<TreeNode> knn, TreeNode node, Logger logger) {
+    private static void fixed2Down(ArrayList<TreeNode> knn, TreeNode node) {
         if (node.distance > knn.get(0).distance)
             return;
 
-        //System.out.println("      ··· knn集合弹出元素： " + knn.get(0).toString());
-        logger.info("      ··· knn集合弹出元素： " + knn.get(0).toString());
-
         knn.set(0, node);
         int i = 0;
         int j = i * 2 + 1;
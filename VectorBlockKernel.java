@@ -0,0 +1,220 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BlockKernel的向量实现（jdk.incubator.vector），只支持带权欧氏距离和欧氏距离
+ * <p>
+ * 每次从坐标、权重数组中读取一个向量宽度的候选点，按与WeightedKernel.within相同的公式
+ * r = eps - qw - w，r >= 0 且 dx^2 + dy^2 <= r^2 得到比较结果的掩码；
+ * 运算顺序与标量版本一致，结果逐位相同。不足一个向量宽度的尾部逐点计算。
+ * <p>
+ * 只使用JDK 17已有内建实现的掩码操作（trueCount、anyTrue），VectorMask.toLong在JDK 17上
+ * 每次调用都会分配对象：收集结果时只对含有范围内点的向量逐点复核，大部分向量整体跳过。
+ * <p>
+ * 多维版本按维度顺序累加坐标差的平方，与BlockKernel.distance2的累加顺序相同；
+ * 三维时改用单独的三列版本，循环中直接读取x、y、z三列，没有维度循环和长度判断。
+ */
+final class VectorBlockKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private VectorBlockKernel() {
+    }
+
+
+    /**
+     * 见BlockKernel.count，w为null时忽略权重
+     */
+    static int count(double[] x, double[] y, double[] w, int from, int to,
+                     double qx, double qy, double qw, double eps, int self, int limit) {
+        int count = 0;
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound && count < limit; pos += LANES)
+            count += mask(x, y, w, pos, qx, qy, qw, eps).trueCount();
+        // 向量部分包含了self（self与自身的距离同样按公式判断）
+        if (self >= from && self < pos && within(x, y, w, self, qx, qy, qw, eps))
+            count--;
+        for (; pos < to && count < limit; pos++)
+            if (pos != self && within(x, y, w, pos, qx, qy, qw, eps))
+                count++;
+        return count;
+    }
+
+
+    /**
+     * 见BlockKernel.collect，w为null时忽略权重
+     */
+    static void collect(double[] x, double[] y, double[] w, int from, int to,
+                        double qx, double qy, double qw, double eps, int self, int[] index, IntList result) {
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound; pos += LANES) {
+            if (!mask(x, y, w, pos, qx, qy, qw, eps).anyTrue())
+                continue;
+            for (int p = pos; p < pos + LANES; p++)
+                if (p != self && within(x, y, w, p, qx, qy, qw, eps))
+                    result.add(index == null ? p : index[p]);
+        }
+        for (; pos < to; pos++)
+            if (pos != self && within(x, y, w, pos, qx, qy, qw, eps))
+                result.add(index == null ? pos : index[pos]);
+    }
+
+
+    /**
+     * @return [pos, pos + LANES)中各点是否在范围内
+     */
+    private static VectorMask<Double> mask(double[] x, double[] y, double[] w, int pos, double qx, double qy, double qw, double eps) {
+        DoubleVector dx = DoubleVector.fromArray(SPECIES, x, pos).sub(qx);
+        DoubleVector dy = DoubleVector.fromArray(SPECIES, y, pos).sub(qy);
+        DoubleVector d2 = dx.mul(dx).add(dy.mul(dy));
+        if (w == null)
+            return d2.compare(VectorOperators.LE, eps * eps);
+        DoubleVector r = DoubleVector.broadcast(SPECIES, eps - qw).sub(DoubleVector.fromArray(SPECIES, w, pos));
+        return r.compare(VectorOperators.GE, 0).and(d2.compare(VectorOperators.LE, r.mul(r)));
+    }
+
+
+    private static boolean within(double[] x, double[] y, double[] w, int pos, double qx, double qy, double qw, double eps) {
+        double dx = qx - x[pos];
+        double dy = qy - y[pos];
+        if (w == null)
+            return dx * dx + dy * dy <= eps * eps;
+        double r = eps - qw - w[pos];
+        return r >= 0 && dx * dx + dy * dy <= r * r;
+    }
+
+
+    /**
+     * 见BlockKernel.count的多维版本，w为null时忽略权重
+     */
+    static int count(double[][] coord, double[] w, int from, int to,
+                     double[] q, double qw, double eps, int self, int limit) {
+        if (q.length == 3)
+            return count(coord[0], coord[1], coord[2], w, from, to, q[0], q[1], q[2], qw, eps, self, limit);
+        int count = 0;
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound && count < limit; pos += LANES)
+            count += mask(coord, w, pos, q, qw, eps).trueCount();
+        if (self >= from && self < pos && within(coord, w, self, q, qw, eps))
+            count--;
+        for (; pos < to && count < limit; pos++)
+            if (pos != self && within(coord, w, pos, q, qw, eps))
+                count++;
+        return count;
+    }
+
+
+    /**
+     * 见BlockKernel.collect的多维版本，w为null时忽略权重
+     */
+    static void collect(double[][] coord, double[] w, int from, int to,
+                        double[] q, double qw, double eps, int self, int[] index, IntList result) {
+        if (q.length == 3) {
+            collect(coord[0], coord[1], coord[2], w, from, to, q[0], q[1], q[2], qw, eps, self, index, result);
+            return;
+        }
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound; pos += LANES) {
+            if (!mask(coord, w, pos, q, qw, eps).anyTrue())
+                continue;
+            for (int p = pos; p < pos + LANES; p++)
+                if (p != self && within(coord, w, p, q, qw, eps))
+                    result.add(index == null ? p : index[p]);
+        }
+        for (; pos < to; pos++)
+            if (pos != self && within(coord, w, pos, q, qw, eps))
+                result.add(index == null ? pos : index[pos]);
+    }
+
+
+    private static VectorMask<Double> mask(double[][] coord, double[] w, int pos, double[] q, double qw, double eps) {
+        DoubleVector d2 = square(coord[0], pos, q[0]).add(square(coord[1], pos, q[1]));
+        for (int d = 2; d < q.length; d++)
+            d2 = d2.add(square(coord[d], pos, q[d]));
+        if (w == null)
+            return d2.compare(VectorOperators.LE, eps * eps);
+        DoubleVector r = DoubleVector.broadcast(SPECIES, eps - qw).sub(DoubleVector.fromArray(SPECIES, w, pos));
+        return r.compare(VectorOperators.GE, 0).and(d2.compare(VectorOperators.LE, r.mul(r)));
+    }
+
+
+    private static DoubleVector square(double[] c, int pos, double q) {
+        DoubleVector d = DoubleVector.fromArray(SPECIES, c, pos).sub(q);
+        return d.mul(d);
+    }
+
+
+    private static boolean within(double[][] coord, double[] w, int pos, double[] q, double qw, double eps) {
+        double d2 = BlockKernel.distance2(coord, pos, q);
+        if (w == null)
+            return d2 <= eps * eps;
+        double r = eps - qw - w[pos];
+        return r >= 0 && d2 <= r * r;
+    }
+
+
+    /**
+     * 三维的count，w为null时忽略权重
+     */
+    static int count(double[] x, double[] y, double[] z, double[] w, int from, int to,
+                     double qx, double qy, double qz, double qw, double eps, int self, int limit) {
+        int count = 0;
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound && count < limit; pos += LANES)
+            count += mask(x, y, z, w, pos, qx, qy, qz, qw, eps).trueCount();
+        if (self >= from && self < pos && within(x, y, z, w, self, qx, qy, qz, qw, eps))
+            count--;
+        for (; pos < to && count < limit; pos++)
+            if (pos != self && within(x, y, z, w, pos, qx, qy, qz, qw, eps))
+                count++;
+        return count;
+    }
+
+
+    /**
+     * 三维的collect，w为null时忽略权重
+     */
+    static void collect(double[] x, double[] y, double[] z, double[] w, int from, int to,
+                        double qx, double qy, double qz, double qw, double eps, int self, int[] index, IntList result) {
+        int pos = from;
+        for (int bound = from + SPECIES.loopBound(to - from); pos < bound; pos += LANES) {
+            if (!mask(x, y, z, w, pos, qx, qy, qz, qw, eps).anyTrue())
+                continue;
+            for (int p = pos; p < pos + LANES; p++)
+                if (p != self && within(x, y, z, w, p, qx, qy, qz, qw, eps))
+                    result.add(index == null ? p : index[p]);
+        }
+        for (; pos < to; pos++)
+            if (pos != self && within(x, y, z, w, pos, qx, qy, qz, qw, eps))
+                result.add(index == null ? pos : index[pos]);
+    }
+
+
+    private static VectorMask<Double> mask(double[] x, double[] y, double[] z, double[] w, int pos,
+                                           double qx, double qy, double qz, double qw, double eps) {
+        DoubleVector dx = DoubleVector.fromArray(SPECIES, x, pos).sub(qx);
+        DoubleVector dy = DoubleVector.fromArray(SPECIES, y, pos).sub(qy);
+        DoubleVector dz = DoubleVector.fromArray(SPECIES, z, pos).sub(qz);
+        DoubleVector d2 = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+        if (w == null)
+            return d2.compare(VectorOperators.LE, eps * eps);
+        DoubleVector r = DoubleVector.broadcast(SPECIES, eps - qw).sub(DoubleVector.fromArray(SPECIES, w, pos));
+        return r.compare(VectorOperators.GE, 0).and(d2.compare(VectorOperators.LE, r.mul(r)));
+    }
+
+
+    private static boolean within(double[] x, double[] y, double[] z, double[] w, int pos,
+                                  double qx, double qy, double qz, double qw, double eps) {
+        double dx = qx - x[pos];
+        double dy = qy - y[pos];
+        double dz = qz - z[pos];
+        double d2 = dx * dx + dy * dy + dz * dz;
+        if (w == null)
+            return d2 <= eps * eps;
+        double r = eps - qw - w[pos];
+        return r >= 0 && d2 <= r * r;
+    }
+}
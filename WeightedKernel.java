@@ -0,0 +1,58 @@
+/**
+ * 带权欧氏距离：sqrt(dx^2 + dy^2) + w1 + w2，与Point.getDistance相同
+ * 比较时转换为 dx^2 + dy^2 <= (eps - w1 - w2)^2，无需开方；要求权重非负
+ */
+public final class WeightedKernel implements DistanceKernel {
+
+    @Override
+    public double distance(double x1, double y1, double w1, double x2, double y2, double w2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return Math.sqrt(dx * dx + dy * dy) + w1 + w2;
+    }
+
+    @Override
+    public boolean within(double x1, double y1, double w1, double x2, double y2, double w2, double eps) {
+        double r = eps - w1 - w2;
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return r >= 0 && dx * dx + dy * dy <= r * r;
+    }
+
+    @Override
+    public boolean axisOutside(int dim, double gap, double qx, double qy, double qw, double minWeight, double eps) {
+        return Math.abs(gap) + qw + minWeight > eps;
+    }
+
+    @Override
+    public boolean boxOutside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double minWeight, double eps) {
+        double r = eps - qw - minWeight;
+        double dx = Math.max(Math.max(minX - qx, qx - maxX), 0);
+        double dy = Math.max(Math.max(minY - qy, qy - maxY), 0);
+        return r < 0 || dx * dx + dy * dy > r * r;
+    }
+
+    @Override
+    public boolean boxInside(double qx, double qy, double qw, double minX, double maxX, double minY, double maxY, double maxWeight, double eps) {
+        double r = eps - qw - maxWeight;
+        double dx = Math.max(qx - minX, maxX - qx);
+        double dy = Math.max(qy - minY, maxY - qy);
+        return r >= 0 && dx * dx + dy * dy <= r * r;
+    }
+
+    @Override
+    public int maxDimensions() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean withinSquared(double d2, double w1, double w2, double eps) {
+        double r = eps - w1 - w2;
+        return r >= 0 && d2 <= r * r;
+    }
+
+    @Override
+    public double distance(double d2, double w1, double w2) {
+        return Math.sqrt(d2) + w1 + w2;
+    }
+}